@@ -0,0 +1,180 @@
+import dronenavigation.benchmarks.Workload;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The workloads behind the benchmarks in {@code dronenavigation.benchmarks}, set up once per trial on a layout
+ * from {@link StationLayouts} with its fixed seed.
+ */
+public final class BenchmarkWorkloads {
+
+    // Long enough for any local optimum of the heuristic without perturbation
+    private static final long HEURISTIC_BUDGET_MILLIS = 60_000;
+
+    private static final int JOURNAL_CAPACITY = 256 << 20;
+
+    private BenchmarkWorkloads() {
+    }
+
+    public static Workload create(String name, String layout, int stations) throws Exception {
+        long seed = StationLayouts.SEED;
+        switch (name) {
+            case "heldKarp": {
+                double[][] distances = StationLayouts.distances(layout, stations, seed);
+                return () -> new HeldKarpSolver().solve(distances);
+            }
+            case "parallelHeldKarp": {
+                double[][] distances = StationLayouts.distances(layout, stations, seed);
+                int cores = Runtime.getRuntime().availableProcessors();
+                return () -> new ParallelHeldKarpSolver(cores).solve(distances);
+            }
+            case "offHeapHeldKarp": {
+                double[][] distances = StationLayouts.distances(layout, stations, seed);
+                int cores = Runtime.getRuntime().availableProcessors();
+                Path scratch = Path.of(System.getProperty("java.io.tmpdir"));
+                return () -> new OffHeapHeldKarpSolver(true, cores, scratch).solve(distances);
+            }
+            case "branchAndBound": {
+                double[][] distances = StationLayouts.distances(layout, stations, seed);
+                return () -> new BranchAndBoundSolver().solve(distances);
+            }
+            case "heuristicFromMatrix": {
+                double[][] distances = StationLayouts.distances(layout, stations, seed);
+                return () -> new HeuristicSolver(HEURISTIC_BUDGET_MILLIS, false, 1).solve(distances);
+            }
+            case "heuristicFromCoordinates": {
+                double[][] coordinates = StationLayouts.coordinates(layout, stations, seed);
+                return () -> new HeuristicSolver(HEURISTIC_BUDGET_MILLIS, false, 1).solve(coordinates[0], coordinates[1]);
+            }
+            case "heldKarpBound": {
+                double[][] distances = StationLayouts.distances(layout, stations, seed);
+                return () -> LowerBounds.heldKarp(distances, Double.MAX_VALUE, 50);
+            }
+            case "buildMatrix": {
+                double[][] coordinates = StationLayouts.coordinates(layout, stations, seed);
+                return () -> DistanceMatrixBuilder.build(coordinates[0], coordinates[1]);
+            }
+            case "kdTreeNeighbours": {
+                double[][] coordinates = StationLayouts.coordinates(layout, stations, seed);
+                return () -> new KdTree(coordinates[0], coordinates[1]).neighbourLists(HeuristicSolver.NEIGHBOURS);
+            }
+            case "turnCommands":
+                return turnCommands(layout, stations, seed);
+            case "queryFleet":
+                return queryFleet(stations);
+            case "parseState":
+                return parseState();
+            case "journalState":
+            case "journalCommand":
+                return journal(name.equals("journalState"));
+            default:
+                throw new IllegalArgumentException("Unknown workload " + name);
+        }
+    }
+
+    // The turns Main writes to DroneCommands.txt for a planned tour
+    private static Workload turnCommands(String layout, int stations, long seed) {
+        Station[] layoutStations = StationLayouts.stations(layout, stations, seed);
+        double[][] coordinates = StationLayouts.coordinates(layout, stations, seed);
+        int[] path = new HeuristicSolver(100, false, 1).solve(coordinates[0], coordinates[1]).getPath();
+        return () -> {
+            String[] angles = Main.createArrayOfAngles(path, layoutStations);
+            String[] turns = new String[path.length - 1];
+            for (int i = 1; i < path.length - 1; i++) {
+                turns[i] = Main.getDifferenceInAngles(angles, i);
+            }
+            return turns;
+        };
+    }
+
+    // One state line parsed from a direct buffer into the next slot of a ring, the way the telemetry thread does it
+    private static Workload parseState() {
+        byte[] state = ("mid:-1;x:0;y:0;z:0;mpry:0,0,0;pitch:2;roll:-1;yaw:-93;vgx:0;vgy:0;vgz:0;templ:63;temph:66;"
+                + "tof:10;h:120;bat:87;baro:112.43;time:35;agx:-3.00;agy:7.00;agz:-1000.00;\r\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer line = ByteBuffer.allocateDirect(state.length);
+        line.put(state).flip();
+        TelemetryRing ring = new TelemetryRing(TelloTelemetry.DEFAULT_HISTORY);
+        return () -> {
+            int offset = ring.claim();
+            boolean parsed = TelloTelemetry.parse(line, ring.slots(), offset);
+            ring.publish(0);
+            return parsed;
+        };
+    }
+
+    /**
+     * One state, or one command with its attempt, reply and end, appended to a flight journal the way the
+     * telemetry thread and the fleet do it. A full journal is replaced by a new one, which happens once every
+     * two million records or so.
+     */
+    private static Workload journal(boolean states) throws Exception {
+        Path file = Files.createTempFile("benchmark", ".journal");
+        InetSocketAddress drone = new InetSocketAddress("192.168.10.1", 8889);
+        double[] values = new double[TelloState.FIELDS];
+        TelloTelemetry.parse(ByteBuffer.wrap(("mid:-1;x:0;y:0;z:0;mpry:0,0,0;pitch:2;roll:-1;yaw:-93;vgx:0;vgy:0;vgz:0;templ:63;temph:66;"
+                + "tof:10;h:120;bat:87;baro:112.43;time:35;agx:-3.00;agy:7.00;agz:-1000.00;\r\n").getBytes(StandardCharsets.US_ASCII)), values, 0);
+        return new Workload() {
+            private FlightJournal journal = FlightJournal.create(file, JOURNAL_CAPACITY);
+
+            @Override
+            public Object run() throws Exception {
+                if (journal.getSize() > JOURNAL_CAPACITY - 1024) {
+                    journal.close();
+                    journal = FlightJournal.create(file, JOURNAL_CAPACITY);
+                }
+                long now = System.nanoTime();
+                if (states) {
+                    journal.state(drone, now, values, 0);
+                } else {
+                    journal.submitted(drone, now, "go 120 -45 0 50 m-2");
+                    journal.sent(drone, now, 1);
+                    journal.replied(drone, now, "ok", 1_000_000);
+                    journal.finished(drone, now, 1_200_000, 1_000_000, 1, false, true);
+                }
+                return journal;
+            }
+
+            @Override
+            public void close() throws Exception {
+                journal.close();
+                Files.deleteIfExists(file);
+            }
+        };
+    }
+
+    // One query to each of a number of simulated drones that reply at once, done when all of them answered
+    private static Workload queryFleet(int drones) throws Exception {
+        TelloSimulator simulator = TelloSimulator.onLoopback(drones, 0.0);
+        TelloFleet fleet = new TelloFleet(0);
+        List<TelloFleet.Drone> fleetDrones = new ArrayList<>();
+        for (InetSocketAddress address : simulator.getAddresses()) {
+            TelloFleet.Drone drone = fleet.drone(address);
+            drone.send("command");
+            fleetDrones.add(drone);
+        }
+
+        return new Workload() {
+            @Override
+            public Object run() {
+                CompletableFuture<?>[] replies = new CompletableFuture<?>[fleetDrones.size()];
+                for (int i = 0; i < replies.length; i++) {
+                    replies[i] = fleetDrones.get(i).submit("battery?");
+                }
+                return CompletableFuture.allOf(replies).join();
+            }
+
+            @Override
+            public void close() throws Exception {
+                fleet.close();
+                simulator.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.Random;
+
+/**
+ * Station layouts the benchmarks run on, always the same for the same seed. Station 0 is the depot.
+ *
+ * random:    uniform over a square whose side grows with the square root of the count, i.e. constant density
+ * clustered: a few tight Gaussian clusters in the same square, like inspection sites around a few buildings
+ * grid:      a regular grid with one metre spacing, the worst case for ties between equal distances
+ */
+final class StationLayouts {
+
+    static final long SEED = 42L;
+
+    private StationLayouts() {
+    }
+
+    // {xs, ys}
+    static double[][] coordinates(String layout, int stations, long seed) {
+        Random random = new Random(seed);
+        double side = Math.max(4.0, Math.sqrt(stations) * 2.0);
+        double[] xs = new double[stations];
+        double[] ys = new double[stations];
+        switch (layout) {
+            case "random":
+                for (int i = 0; i < stations; i++) {
+                    xs[i] = random.nextDouble() * side;
+                    ys[i] = random.nextDouble() * side;
+                }
+                break;
+            case "clustered":
+                int clusters = Math.max(2, (int) Math.sqrt(stations) / 2);
+                double[] cx = new double[clusters];
+                double[] cy = new double[clusters];
+                for (int c = 0; c < clusters; c++) {
+                    cx[c] = random.nextDouble() * side;
+                    cy[c] = random.nextDouble() * side;
+                }
+                double spread = side / clusters / 2;
+                for (int i = 0; i < stations; i++) {
+                    int c = random.nextInt(clusters);
+                    xs[i] = cx[c] + random.nextGaussian() * spread;
+                    ys[i] = cy[c] + random.nextGaussian() * spread;
+                }
+                break;
+            case "grid":
+                int columns = (int) Math.ceil(Math.sqrt(stations));
+                for (int i = 0; i < stations; i++) {
+                    xs[i] = i % columns;
+                    ys[i] = i / columns;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown layout " + layout);
+        }
+        return new double[][]{xs, ys};
+    }
+
+    static double[][] distances(String layout, int stations, long seed) {
+        double[][] coordinates = coordinates(layout, stations, seed);
+        return DistanceMatrixBuilder.build(coordinates[0], coordinates[1]);
+    }
+
+    static Station[] stations(String layout, int stations, long seed) {
+        double[][] coordinates = coordinates(layout, stations, seed);
+        Station[] result = new Station[stations];
+        for (int i = 0; i < stations; i++) {
+            result[i] = new Station(coordinates[0][i], coordinates[1][i]);
+        }
+        return result;
+    }
+}
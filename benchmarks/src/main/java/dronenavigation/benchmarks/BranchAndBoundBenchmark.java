@@ -0,0 +1,51 @@
+package dronenavigation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Branch-and-bound up to the largest mission the route planner gives it (12 stations).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BranchAndBoundBenchmark {
+
+    @Param({"5", "8", "10", "12"})
+    public int stations;
+
+    @Param({"random", "clustered", "grid"})
+    public String layout;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create("branchAndBound", layout, stations);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        workload.close();
+    }
+
+    @Benchmark
+    public Object solve() throws Exception {
+        return workload.run();
+    }
+}
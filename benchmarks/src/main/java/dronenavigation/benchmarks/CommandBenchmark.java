@@ -0,0 +1,72 @@
+package dronenavigation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The drone side: turning a tour into the turn commands Main writes out, and the send path of the fleet
+ * against simulated drones on the loopback interface that reply at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Turns {
+        @Param({"7", "100", "1000"})
+        public int stations;
+
+        @Param({"random", "clustered", "grid"})
+        public String layout;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() {
+            workload = Workload.create("turnCommands", layout, stations);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Fleet {
+        @Param({"1", "20"})
+        public int drones;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() {
+            workload = Workload.create("queryFleet", "random", drones);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @Benchmark
+    public Object turnCommands(Turns turns) throws Exception {
+        return turns.workload.run();
+    }
+
+    @Benchmark
+    public Object queryFleet(Fleet fleet) throws Exception {
+        return fleet.workload.run();
+    }
+}
@@ -0,0 +1,54 @@
+package dronenavigation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Held-Karp on the heap, sequential and parallel, on the sizes the route planner gives it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class ExactSolverBenchmark {
+
+    @Param({"heldKarp", "parallelHeldKarp"})
+    public String solver;
+
+    @Param({"5", "10", "15", "20"})
+    public int stations;
+
+    @Param({"random", "clustered", "grid"})
+    public String layout;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create(solver, layout, stations);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        workload.close();
+    }
+
+    @Benchmark
+    public Object solve() throws Exception {
+        return workload.run();
+    }
+}
@@ -0,0 +1,79 @@
+package dronenavigation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The heuristic without its perturbation phase, so that a solve runs to the first local optimum instead of
+ * filling its time budget, and the Held-Karp lower bound.
+ *
+ * Only planning from coordinates goes up to 10k stations. Everything that works on the full matrix stops at
+ * 1000: at 10k the 50 steps of the bound alone take over a minute.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class HeuristicBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Coordinates {
+        @Param({"100", "1000", "10000"})
+        public int stations;
+
+        @Param({"random", "clustered", "grid"})
+        public String layout;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() {
+            workload = Workload.create("heuristicFromCoordinates", layout, stations);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Matrix {
+        @Param({"100", "1000"})
+        public int stations;
+
+        @Param({"random", "clustered", "grid"})
+        public String layout;
+
+        Workload heuristic;
+        Workload bound;
+
+        @Setup
+        public void setUp() {
+            heuristic = Workload.create("heuristicFromMatrix", layout, stations);
+            bound = Workload.create("heldKarpBound", layout, stations);
+        }
+    }
+
+    @Benchmark
+    public Object heuristicFromCoordinates(Coordinates coordinates) throws Exception {
+        return coordinates.workload.run();
+    }
+
+    @Benchmark
+    public Object heuristicFromMatrix(Matrix matrix) throws Exception {
+        return matrix.heuristic.run();
+    }
+
+    @Benchmark
+    public Object heldKarpBound(Matrix matrix) throws Exception {
+        return matrix.bound.run();
+    }
+}
@@ -0,0 +1,51 @@
+package dronenavigation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What journaling adds to the telemetry thread per state and to the fleet's event loop per command. Run with
+ * -prof gc, it should allocate nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Journal {
+        @Param({"journalState", "journalCommand"})
+        String record;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() {
+            workload = Workload.create(record, "random", 0);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @Benchmark
+    public Object append(Journal journal) throws Exception {
+        return journal.workload.run();
+    }
+}
@@ -0,0 +1,28 @@
+package dronenavigation.benchmarks;
+
+/**
+ * One piece of planner or drone code set up for measuring. The planner lives in the default package, which
+ * JMH does not accept benchmarks in and which no named package can refer to, so the benchmarks see it
+ * through this interface only.
+ */
+public interface Workload extends AutoCloseable {
+
+    // Runs the code once and returns its result, for JMH to consume
+    Object run() throws Exception;
+
+    @Override
+    default void close() throws Exception {
+    }
+
+    /**
+     * Sets up the named workload on a layout, see {@code BenchmarkWorkloads} in the default package.
+     */
+    static Workload create(String name, String layout, int stations) {
+        try {
+            Class<?> workloads = Class.forName("BenchmarkWorkloads");
+            return (Workload) workloads.getMethod("create", String.class, String.class, int.class).invoke(null, name, layout, stations);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set up workload " + name, e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FlightPipelineTest {
+
+    @Test
+    void stopsEveryStageWhenTheDroneThrows() throws Exception {
+        double[] xs = {0, 3, 3, 0, 1.5};
+        double[] ys = {0, 0, 3, 3, 5};
+        Station[] stations = new Station[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            stations[i] = new Station(xs[i], ys[i]);
+        }
+        FlightPipeline pipeline = new FlightPipeline(new FlightPlanCompiler(), stations, DistanceMatrixBuilder.build(xs, ys), 200);
+
+        List<String> sent = new ArrayList<>();
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> pipeline.fly(command -> {
+            sent.add(command);
+            throw new IllegalStateException("Link lost");
+        }));
+        assertEquals("Link lost", error.getMessage());
+        assertEquals(1, sent.size());
+
+        // The compiler would otherwise wait on a full command queue for good
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("flight-")) {
+                thread.join(5_000);
+                assertFalse(thread.isAlive(), thread.getName() + " is still running");
+            }
+        }
+    }
+}
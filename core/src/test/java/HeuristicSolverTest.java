@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the heuristic against Held-Karp as the exact oracle on missions small enough for both.
+ */
+class HeuristicSolverTest {
+
+    private static final double EPSILON = 1e-9;
+    private static final int MISSIONS_PER_SIZE = 15;
+
+    @Test
+    void findsTheOptimumOfSmallSymmetricMissions() {
+        Random random = new Random(11);
+        for (int n = 4; n <= 10; n++) {
+            for (int mission = 0; mission < MISSIONS_PER_SIZE; mission++) {
+                double[][] distances = matrix(random, n, false);
+                Tour exact = new HeldKarpSolver().solve(distances);
+                Tour heuristic = new HeuristicSolver(10).solve(distances);
+
+                assertTour(heuristic, distances);
+                assertEquals(exact.getCost(), heuristic.getCost(), EPSILON, "n = " + n + ", mission " + mission);
+            }
+        }
+    }
+
+    @Test
+    void pricesMovesInTheirDirectionOnAsymmetricMissions() {
+        Random random = new Random(11);
+        int optimal = 0;
+        int missions = 0;
+        for (int n = 4; n <= 10; n++) {
+            for (int mission = 0; mission < MISSIONS_PER_SIZE; mission++) {
+                double[][] distances = matrix(random, n, true);
+                Tour exact = new HeldKarpSolver().solve(distances);
+                Tour heuristic = new HeuristicSolver(10).solve(distances);
+                double start = Tour.costOf(HeuristicSolver.nearestNeighbourTour(distances), distances);
+
+                assertTour(heuristic, distances);
+                assertTrue(heuristic.getCost() >= exact.getCost() - EPSILON, "below the optimum, n = " + n);
+                // A move priced as if the matrix were symmetric can make the tour worse than it started
+                assertTrue(heuristic.getCost() <= start + EPSILON, "worse than nearest neighbour, n = " + n);
+                missions++;
+                if (heuristic.getCost() <= exact.getCost() + EPSILON) {
+                    optimal++;
+                }
+            }
+        }
+        assertTrue(optimal >= missions * 3 / 4, optimal + " of " + missions + " missions planned optimally");
+    }
+
+    // A closed tour from the depot over every station once, whose cost is what its legs add up to
+    private static void assertTour(Tour tour, double[][] distances) {
+        int n = distances.length;
+        int[] path = tour.getPath();
+        assertEquals(n + 1, path.length);
+        assertEquals(0, path[0]);
+        assertEquals(0, path[n]);
+        boolean[] seen = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            assertTrue(!seen[path[i]], "station " + path[i] + " is visited twice");
+            seen[path[i]] = true;
+        }
+        assertEquals(Tour.costOf(path, distances), tour.getCost(), EPSILON);
+    }
+
+    // Straight distances between random stations, each leg stretched or shrunk on its own when asymmetric
+    private static double[][] matrix(Random random, int n, boolean asymmetric) {
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextDouble() * 10;
+            ys[i] = random.nextDouble() * 10;
+        }
+        double[][] distances = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j) {
+                    distances[i][j] = Math.hypot(xs[i] - xs[j], ys[i] - ys[j]) * (asymmetric ? 0.5 + random.nextDouble() : 1.0);
+                }
+            }
+        }
+        return distances;
+    }
+}
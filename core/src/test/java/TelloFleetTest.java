@@ -0,0 +1,120 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Flies a {@link TelloFleet} against the {@link TelloSimulator} on the loopback interface, with the simulator
+ * losing and delaying datagrams, and checks that every command gets its own reply.
+ *
+ * A query is what tells a mixed up reply apart: its answer is a number, where a reply meant for a movement
+ * before it would be "ok".
+ */
+class TelloFleetTest {
+
+    private static final int MISSIONS = 20;
+
+    @Test
+    void fliesEveryMissionThroughLossAndJitter() throws Exception {
+        long latency = 5;
+        long jitter = 10;
+        double timeScale = 0.01;
+        List<List<String>> missions = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < MISSIONS; i++) {
+            List<String> commands = new ArrayList<>(MissionLoadTest.mission(random));
+            // Asked after the take-off and again at the end, when a lost "ok" would be the likeliest to turn up
+            commands.add(commands.indexOf("takeoff") + 1, "battery?");
+            commands.add("battery?");
+            missions.add(commands);
+        }
+        long timeoutMillis = Math.max(250, (long) (500 / TelloSimulator.DEFAULT_SPEED * 1000 * timeScale) + 2 * (latency + jitter) + 50);
+
+        try (TelloSimulator simulator = new TelloSimulator(new InetSocketAddress("127.0.0.1", 0), MISSIONS, latency, jitter, 0.05, 0.0, timeScale, 7);
+             TelloFleet fleet = new TelloFleet(0, timeoutMillis, 8, 20, 500)) {
+            List<CompletableFuture<List<CommandResult>>> running = new ArrayList<>();
+            for (int i = 0; i < MISSIONS; i++) {
+                running.add(fleet.drone(simulator.getAddress(i)).runMission(missions.get(i)));
+            }
+            CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+
+            for (int i = 0; i < MISSIONS; i++) {
+                List<CommandResult> results = running.get(i).join();
+                assertEquals(missions.get(i).size(), results.size(), "mission " + i + " ended early: " + results);
+                for (CommandResult result : results) {
+                    assertTrue(result.isOk(), "mission " + i + ": " + result);
+                    if (result.getCommand().equals("battery?")) {
+                        assertTrue(result.getResponse().matches("\\d+"), "mission " + i + ": " + result);
+                    }
+                }
+                assertFalse(simulator.isFlying(i), "drone " + i + " is still in the air");
+            }
+            assertTrue(simulator.dropped.get() > 0, "nothing was lost");
+            assertNull(simulator.getFailure());
+        }
+    }
+
+    @Test
+    void dropsRepliesThatComeAfterTheTimeout() throws Exception {
+        // A take-off takes 100 ms here, twice the timeout, so its first reply comes while the retry waits or flies
+        double timeScale = 0.02;
+        try (TelloSimulator simulator = new TelloSimulator(new InetSocketAddress("127.0.0.1", 0), 1, 2, 2, 0.0, 0.0, timeScale, 7);
+             TelloFleet fleet = new TelloFleet(0, 50, 3, 10, 100)) {
+            TelloFleet.Drone drone = fleet.drone(simulator.getAddress(0));
+            List<String> commands = List.of("command", "takeoff", "battery?", "forward 300", "speed?", "land", "battery?");
+            List<CommandResult> results = drone.runMission(commands).get(30, TimeUnit.SECONDS);
+
+            assertEquals(commands.size(), results.size(), results.toString());
+            for (CommandResult result : results) {
+                assertTrue(result.isOk(), result.toString());
+            }
+            assertTrue(results.get(2).getResponse().matches("\\d+"), results.get(2).toString());
+            assertTrue(results.get(4).getResponse().matches("[\\d.]+"), results.get(4).toString());
+            assertTrue(results.get(6).getResponse().matches("\\d+"), results.get(6).toString());
+            assertTrue(drone.getStats().getTimeouts() > 0, "no command timed out");
+            assertTrue(drone.getStats().getLateReplies() > 0, "no reply came late");
+            assertFalse(simulator.isFlying(0));
+            assertNull(simulator.getFailure());
+        }
+    }
+
+    @Test
+    void completesCommandsOffTheLoop() throws Exception {
+        try (TelloSimulator simulator = TelloSimulator.onLoopback(1, 0.01);
+             TelloFleet fleet = new TelloFleet(0, 1_000, 3, 10, 100)) {
+            String thread = fleet.drone(simulator.getAddress(0)).submit("command")
+                    .thenApply(result -> Thread.currentThread().getName())
+                    .get(10, TimeUnit.SECONDS);
+            assertNotEquals("tello-fleet-0", thread);
+        }
+    }
+
+    @Test
+    void failsTheCommandOfADroneThatCannotBeSentTo() throws Exception {
+        try (TelloSimulator simulator = TelloSimulator.onLoopback(1, 0.01);
+             TelloFleet fleet = new TelloFleet(0, 1_000, 3, 10, 100)) {
+            // Nothing can be sent to port 0, which is no attempt, and the other drones carry on
+            TelloFleet.Drone nowhere = fleet.drone(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            ExecutionException error = assertThrows(ExecutionException.class, () -> nowhere.submit("command").get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, error.getCause());
+            assertEquals(0, nowhere.getStats().getDatagrams());
+
+            assertTrue(fleet.drone(simulator.getAddress(0)).submit("command").get(10, TimeUnit.SECONDS).isOk());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log lines written by a background thread, so that logging costs the caller a time stamp and an offer to a
+ * bounded queue instead of formatting and console output.
+ *
+ * The writer takes whatever has queued up, formats it with one formatter and prints it with one write. When
+ * the queue is full, because the console cannot keep up, a line is dropped and counted rather than holding
+ * up the caller.
+ */
+final class AsyncLog {
+
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private static final DateTimeFormatter TIME_STAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final AsyncLog CONSOLE = new AsyncLog(System.out, DEFAULT_CAPACITY);
+
+    private final PrintStream out;
+    private final ArrayBlockingQueue<Line> queue;
+    private final Thread writer;
+
+    // Lines queued so far, and of those the ones printed, which come out in the order they were queued
+    final AtomicLong queued = new AtomicLong();
+    final AtomicLong written = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+
+    AsyncLog(PrintStream out, int capacity) {
+        this.out = out;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::run, "async-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    static AsyncLog console() {
+        return CONSOLE;
+    }
+
+    void log(String message) {
+        if (queue.offer(new Line(System.currentTimeMillis(), message))) {
+            queued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // Waits until what was logged so far is written, at most the given time; for the end of a program
+    void flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long target = queued.get();
+        while (written.get() < target && System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void run() {
+        List<Line> batch = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+
+                text.setLength(0);
+                for (Line line : batch) {
+                    TIME_STAMP.formatTo(Instant.ofEpochMilli(line.millis), text);
+                    text.append('\t').append(line.message).append(System.lineSeparator());
+                }
+                out.print(text);
+                out.flush();
+                written.addAndGet(batch.size());
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    private static final class Line {
+        final long millis;
+        final String message;
+
+        Line(long millis, String message) {
+            this.millis = millis;
+            this.message = message;
+        }
+    }
+}
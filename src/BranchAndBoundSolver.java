@@ -0,0 +1,236 @@
+/**
+ * Exact depth-first branch-and-bound.
+ *
+ * The search starts from a heuristic tour as incumbent and cuts a branch as soon as the cost so far plus
+ * a minimum spanning tree over the current station, the unvisited stations and the depot reaches it: the
+ * rest of any tour is a path through exactly those stations, so it cannot be cheaper than that tree.
+ * Children are tried closest first. The partial tour and the unvisited stations share one permutation
+ * that is swapped in place, so nothing is allocated once the search has started.
+ *
+ * With a time budget, a quarter of it goes to the heuristic incumbent and the search gives up at the end of
+ * it, returning the best tour found so far; {@link #isProven()} tells whether that tour is known to be optimal.
+ */
+public class BranchAndBoundSolver implements TourSolver {
+
+    private static final double EPSILON = 1e-12;
+
+    // Time given to the heuristic that finds the first incumbent, at least
+    private static final long SEED_BUDGET_MILLIS = 1;
+
+    // Nodes expanded between two looks at the clock
+    private static final long CLOCK_MASK = (1 << 6) - 1;
+
+    // 0 for a search without a time limit
+    private final long timeBudgetNanos;
+
+    private long nodesExpanded;
+    private long nodesPruned;
+    private boolean proven;
+
+    public BranchAndBoundSolver() {
+        this(0);
+    }
+
+    public BranchAndBoundSolver(long timeBudgetMillis) {
+        this.timeBudgetNanos = timeBudgetMillis * 1_000_000L;
+    }
+
+    @Override
+    public Tour solve(double[][] distances) {
+        long start = System.nanoTime();
+        int n = distances.length;
+        if (n <= 3) {
+            proven = true;
+            return HeldKarpSolver.trivialTour(distances);
+        }
+
+        long seedMillis = Math.max(SEED_BUDGET_MILLIS, timeBudgetNanos / 4_000_000L);
+        Tour incumbent = new HeuristicSolver(seedMillis).solve(distances);
+        Search search = new Search(distances, incumbent, timeBudgetNanos == 0 ? 0 : start + timeBudgetNanos);
+        search.descend(0, 1, 0.0);
+
+        nodesExpanded = search.expanded;
+        nodesPruned = search.pruned;
+        proven = !search.stopped;
+        return new Tour(search.best, search.bestCost);
+    }
+
+    // Whether the last solve searched everything, rather than running out of time
+    boolean isProven() {
+        return proven;
+    }
+
+    // Statistics of the last solve
+    long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    long getNodesPruned() {
+        return nodesPruned;
+    }
+
+    /* ------------------------------- ONE SOLVE -------------------------------- */
+
+    private static final class Search {
+        final int n;
+        final double[] d;
+        final double[] undirected;
+
+        // Every station ordered by distance from station i, at order[i * n ...]
+        final int[] order;
+
+        // perm[0, depth) is the partial tour, perm[depth, n) the stations still to visit
+        final int[] perm;
+        final int[] where;
+        final boolean[] visited;
+
+        // Prim scratch space
+        final double[] key;
+        final boolean[] inTree;
+
+        final int[] best;
+        double bestCost;
+
+        long expanded;
+        long pruned;
+
+        // System.nanoTime() at which the search gives up, 0 for never
+        final long deadline;
+        boolean stopped;
+
+        Search(double[][] distances, Tour incumbent, long deadline) {
+            this.deadline = deadline;
+            n = distances.length;
+            d = new double[n * n];
+            undirected = new double[n * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    d[i * n + j] = distances[i][j];
+                    undirected[i * n + j] = Math.min(distances[i][j], distances[j][i]);
+                }
+            }
+
+            order = new int[n * n];
+            int[][] neighbours = HeuristicSolver.neighbourLists(distances, n - 1);
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(neighbours[i], 0, order, i * n, n - 1);
+            }
+
+            perm = new int[n];
+            where = new int[n];
+            visited = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                perm[i] = i;
+                where[i] = i;
+            }
+            visited[0] = true;
+
+            key = new double[n];
+            inTree = new boolean[n];
+
+            best = incumbent.getPath().clone();
+            bestCost = incumbent.getCost();
+        }
+
+        void descend(int current, int depth, double cost) {
+            expanded++;
+            if ((expanded & CLOCK_MASK) == 0 && deadline != 0 && System.nanoTime() - deadline >= 0) {
+                stopped = true;
+            }
+            if (stopped) {
+                return;
+            }
+            if (depth == n) {
+                double total = cost + d[current * n];
+                if (total < bestCost - EPSILON) {
+                    bestCost = total;
+                    System.arraycopy(perm, 0, best, 0, n);
+                    best[n] = 0;
+                }
+                return;
+            }
+
+            int row = current * n;
+            for (int k = 0; k < n - 1; k++) {
+                int next = order[row + k];
+                if (visited[next]) {
+                    continue;
+                }
+                double nextCost = cost + d[row + next];
+                if (nextCost >= bestCost - EPSILON) {
+                    // Children come closest first, the others are even more expensive
+                    pruned++;
+                    break;
+                }
+
+                swap(depth, where[next]);
+                visited[next] = true;
+
+                if (nextCost + spanningTree(depth + 1, next) < bestCost - EPSILON) {
+                    descend(next, depth + 1, nextCost);
+                } else {
+                    pruned++;
+                }
+
+                visited[next] = false;
+                if (stopped) {
+                    return;
+                }
+            }
+        }
+
+        void swap(int i, int j) {
+            int a = perm[i];
+            int b = perm[j];
+            perm[i] = b;
+            perm[j] = a;
+            where[b] = i;
+            where[a] = j;
+        }
+
+        // Weight of the minimum spanning tree over current, perm[from, n) and the depot (Prim from current)
+        double spanningTree(int from, int current) {
+            int row = current * n;
+            double depotKey = undirected[row];
+            boolean depotInTree = false;
+            for (int i = from; i < n; i++) {
+                int v = perm[i];
+                key[v] = undirected[row + v];
+                inTree[v] = false;
+            }
+
+            double total = 0.0;
+            for (int added = from; added <= n; added++) {
+                int u = -1;
+                double uKey = Double.MAX_VALUE;
+                for (int i = from; i < n; i++) {
+                    int v = perm[i];
+                    if (!inTree[v] && key[v] < uKey) {
+                        u = v;
+                        uKey = key[v];
+                    }
+                }
+                if (!depotInTree && depotKey <= uKey) {
+                    u = 0;
+                    uKey = depotKey;
+                    depotInTree = true;
+                } else {
+                    inTree[u] = true;
+                }
+                total += uKey;
+
+                int uRow = u * n;
+                if (!depotInTree && undirected[uRow] < depotKey) {
+                    depotKey = undirected[uRow];
+                }
+                for (int i = from; i < n; i++) {
+                    int v = perm[i];
+                    if (!inTree[v] && undirected[uRow + v] < key[v]) {
+                        key[v] = undirected[uRow + v];
+                    }
+                }
+            }
+            return total;
+        }
+    }
+}
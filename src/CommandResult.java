@@ -0,0 +1,55 @@
+/**
+ * Outcome of one command sent through a {@link TelloCommandChannel}, after all its attempts.
+ */
+public final class CommandResult {
+    private final String command;
+    private final String response;
+    private final int attempts;
+    private final long roundTripNanos;
+
+    CommandResult(String command, String response, int attempts, long roundTripNanos) {
+        this.command = command;
+        this.response = response;
+        this.attempts = attempts;
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    String getCommand() {
+        return command;
+    }
+
+    // The drone's reply to the last attempt, null if every attempt timed out
+    String getResponse() {
+        return response;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    // Time from sending the last attempt to its reply, -1 without a reply
+    long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    // "ok", or for a query like "battery?" a value; never a timeout, "error ..." or "unknown command: ..."
+    boolean isOk() {
+        if (response == null) {
+            return false;
+        }
+        if (response.equals("ok")) {
+            return true;
+        }
+        return command.endsWith("?") && !response.isEmpty() && !response.startsWith("error") && !response.startsWith("unknown command");
+    }
+
+    boolean isTimedOut() {
+        return response == null;
+    }
+
+    @Override
+    public String toString() {
+        return "\"" + command + "\" -> " + (response == null ? "timeout" : "\"" + response + "\"") + " after " + attempts
+                + (attempts == 1 ? " attempt" : " attempts") + (roundTripNanos >= 0 ? String.format(" (%.1f ms)", roundTripNanos / 1e6) : "");
+    }
+}
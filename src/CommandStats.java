@@ -0,0 +1,74 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a command channel. Written by the channel's event loop only, readable from any thread.
+ */
+public final class CommandStats {
+    final AtomicLong commands = new AtomicLong();
+    final AtomicLong datagrams = new AtomicLong();
+    final AtomicLong replies = new AtomicLong();
+    final AtomicLong timeouts = new AtomicLong();
+    final AtomicLong retries = new AtomicLong();
+    final AtomicLong lateReplies = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong roundTripNanos = new AtomicLong();
+    final AtomicLong maxRoundTripNanos = new AtomicLong();
+
+    void recordRoundTrip(long nanos) {
+        replies.incrementAndGet();
+        roundTripNanos.addAndGet(nanos);
+        if (nanos > maxRoundTripNanos.get()) {
+            maxRoundTripNanos.set(nanos);
+        }
+    }
+
+    long getCommands() {
+        return commands.get();
+    }
+
+    long getDatagrams() {
+        return datagrams.get();
+    }
+
+    long getReplies() {
+        return replies.get();
+    }
+
+    long getTimeouts() {
+        return timeouts.get();
+    }
+
+    long getRetries() {
+        return retries.get();
+    }
+
+    long getLateReplies() {
+        return lateReplies.get();
+    }
+
+    long getFailures() {
+        return failures.get();
+    }
+
+    // Share of sent datagrams that never got a matching reply
+    double getLossRate() {
+        long sent = datagrams.get();
+        return sent == 0 ? 0.0 : (double) timeouts.get() / sent;
+    }
+
+    double getMeanRoundTripMillis() {
+        long count = replies.get();
+        return count == 0 ? 0.0 : roundTripNanos.get() / 1e6 / count;
+    }
+
+    double getMaxRoundTripMillis() {
+        return maxRoundTripNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d commands, %d datagrams, %d replies, %d timeouts (%.1f%% loss), %d retries, %d late, %d failed, rtt mean %.1f ms max %.1f ms",
+                getCommands(), getDatagrams(), getReplies(), getTimeouts(), getLossRate() * 100, getRetries(), getLateReplies(),
+                getFailures(), getMeanRoundTripMillis(), getMaxRoundTripMillis());
+    }
+}
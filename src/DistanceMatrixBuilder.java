@@ -0,0 +1,99 @@
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the Euclidean distance matrix from plain coordinate arrays.
+ *
+ * Only the upper triangle is computed, row by row over contiguous arrays, and then mirrored. Distances are
+ * rounded up to the millimetre numerically instead of through a DecimalFormat round trip. Unlike the format,
+ * a distance that is a whole number of millimetres apart from floating point noise keeps its value
+ * instead of going up by one millimetre. Large matrices are filled by parallel rows.
+ *
+ * Build times go to the "matrix.build" histogram and to {@link FlightEvents.MatrixBuild} events.
+ */
+final class DistanceMatrixBuilder {
+
+    // Below this many stations the rows are not worth a parallel stream
+    static final int PARALLEL_THRESHOLD = 512;
+
+    // Values are rounded up to this many parts of a metre
+    private static final double RESOLUTION = 1000.0;
+
+    // Keeps a distance that is a whole number of millimetres but not exact in binary from being rounded up again
+    private static final double TOLERANCE = 1e-9;
+
+    private static final MetricsRegistry.Histogram BUILDS = MetricsRegistry.global().histogram("matrix.build");
+
+    private DistanceMatrixBuilder() {
+    }
+
+    static double[][] build(double[] xs, double[] ys) {
+        FlightEvents.MatrixBuild event = new FlightEvents.MatrixBuild();
+        event.begin();
+        long start = System.nanoTime();
+
+        int n = xs.length;
+        double[][] matrix = new double[n][n];
+        IntStream rows = IntStream.range(0, n);
+        boolean parallel = n >= PARALLEL_THRESHOLD;
+        if (parallel) {
+            rows = rows.parallel();
+        }
+        rows.forEach(i -> fillRow(xs, ys, matrix[i], i));
+        mirror(matrix);
+
+        BUILDS.record(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.stations = n;
+            event.bytes = (long) n * n * Double.BYTES;
+            event.parallel = parallel;
+            event.commit();
+        }
+        return matrix;
+    }
+
+    // Matrix over the chosen stations, in the order they are listed
+    static double[][] build(List<Integer> stationsToVisit, Station[] stations) {
+        int n = stationsToVisit.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            Station station = stations[stationsToVisit.get(i)];
+            xs[i] = station.getX();
+            ys[i] = station.getY();
+        }
+        return build(xs, ys);
+    }
+
+    static double roundUp(double distance) {
+        return Math.ceil(distance * RESOLUTION - TOLERANCE) / RESOLUTION;
+    }
+
+    private static void fillRow(double[] xs, double[] ys, double[] row, int i) {
+        double x = xs[i];
+        double y = ys[i];
+        for (int j = i + 1; j < row.length; j++) {
+            double dX = xs[j] - x;
+            double dY = ys[j] - y;
+            row[j] = roundUp(Math.sqrt(dX * dX + dY * dY));
+        }
+    }
+
+    // Copies the upper triangle into the lower one, tile by tile so that both sides stay in cache
+    static void mirror(double[][] matrix) {
+        int n = matrix.length;
+        int tile = 64;
+        for (int ii = 0; ii < n; ii += tile) {
+            for (int jj = ii; jj < n; jj += tile) {
+                int iEnd = Math.min(ii + tile, n);
+                int jEnd = Math.min(jj + tile, n);
+                for (int i = ii; i < iEnd; i++) {
+                    for (int j = Math.max(jj, i + 1); j < jEnd; j++) {
+                        matrix[j][i] = matrix[i][j];
+                    }
+                }
+            }
+        }
+    }
+}
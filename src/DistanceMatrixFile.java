@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Compact binary storage of a distance matrix, read and written through memory-mapped files.
+ *
+ * Layout (little-endian):
+ *   int   magic "DMAT"
+ *   short version
+ *   short flags      bit 0: values are floats instead of doubles
+ *                    bit 1: only the upper triangle (j > i) is stored, the matrix is symmetric
+ *   int   stations
+ *   int   fingerprint  hash of the stations and obstacles the matrix was made for, see fingerprint(Station[], ObstacleMap)
+ * followed by the values row by row.
+ *
+ * A file is only worth reading back for the mission it was written for, which its fingerprint tells apart
+ * from any other without reading the values.
+ */
+final class DistanceMatrixFile {
+
+    static final int MAGIC = 0x54414d44; // "DMAT" read little-endian
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    static final short FLOAT_VALUES = 1;
+    static final short UPPER_TRIANGLE = 2;
+
+    // Largest block of rows mapped at once
+    private static final long BLOCK_BYTES = 1L << 30;
+
+    private DistanceMatrixFile() {
+    }
+
+    static void write(Path file, double[][] matrix, boolean floatValues, boolean upperTriangle, int fingerprint) throws IOException {
+        int n = matrix.length;
+        int valueBytes = floatValues ? Float.BYTES : Double.BYTES;
+        short flags = (short) ((floatValues ? FLOAT_VALUES : 0) | (upperTriangle ? UPPER_TRIANGLE : 0));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort(VERSION).putShort(flags).putInt(n).putInt(fingerprint);
+
+            long position = HEADER_BYTES;
+            int row = 0;
+            while (row < n) {
+                int last = lastRowOfBlock(row, n, valueBytes, upperTriangle);
+                long bytes = valuesBetween(row, last, n, upperTriangle) * valueBytes;
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+                block.order(ByteOrder.LITTLE_ENDIAN);
+
+                for (int i = row; i < last; i++) {
+                    int from = upperTriangle ? i + 1 : 0;
+                    if (floatValues) {
+                        for (int j = from; j < n; j++) {
+                            block.putFloat((float) matrix[i][j]);
+                        }
+                    } else {
+                        block.asDoubleBuffer().put(matrix[i], from, n - from);
+                        block.position(block.position() + (n - from) * Double.BYTES);
+                    }
+                }
+                position += bytes;
+                row = last;
+            }
+        }
+    }
+
+    // Hash of the station coordinates and the grown obstacles, never 0 so that it differs from older files
+    static int fingerprint(Station[] stations, ObstacleMap obstacles) {
+        int hash = stations.length;
+        for (Station station : stations) {
+            hash = 31 * hash + Double.hashCode(station.getX());
+            hash = 31 * hash + Double.hashCode(station.getY());
+        }
+        if (obstacles != null) {
+            hash = 31 * hash + Double.hashCode(obstacles.getClearance());
+            for (ObstacleMap.Obstacle obstacle : obstacles.getObstacles()) {
+                hash = 31 * hash + Arrays.hashCode(obstacle.xs);
+                hash = 31 * hash + Arrays.hashCode(obstacle.ys);
+            }
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    // The fingerprint the file was written with, reading its header only
+    static int fingerprint(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer header = header(file, channel);
+            return header.getInt(12);
+        }
+    }
+
+    static double[][] read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer header = header(file, channel);
+            short flags = header.getShort();
+            int n = header.getInt();
+            boolean floatValues = (flags & FLOAT_VALUES) != 0;
+            boolean upperTriangle = (flags & UPPER_TRIANGLE) != 0;
+            int valueBytes = floatValues ? Float.BYTES : Double.BYTES;
+
+            long expected = HEADER_BYTES + valuesBetween(0, n, n, upperTriangle) * valueBytes;
+            if (channel.size() < expected) {
+                throw new IOException(file + " is truncated, expected " + expected + " bytes but found " + channel.size());
+            }
+
+            double[][] matrix = new double[n][n];
+            float[] floats = floatValues ? new float[n] : null;
+            long position = HEADER_BYTES;
+            int row = 0;
+            while (row < n) {
+                int last = lastRowOfBlock(row, n, valueBytes, upperTriangle);
+                long bytes = valuesBetween(row, last, n, upperTriangle) * valueBytes;
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+                block.order(ByteOrder.LITTLE_ENDIAN);
+
+                if (floatValues) {
+                    FloatBuffer values = block.asFloatBuffer();
+                    for (int i = row; i < last; i++) {
+                        int from = upperTriangle ? i + 1 : 0;
+                        values.get(floats, from, n - from);
+                        for (int j = from; j < n; j++) {
+                            matrix[i][j] = floats[j];
+                        }
+                    }
+                } else {
+                    DoubleBuffer values = block.asDoubleBuffer();
+                    for (int i = row; i < last; i++) {
+                        int from = upperTriangle ? i + 1 : 0;
+                        values.get(matrix[i], from, n - from);
+                    }
+                }
+                position += bytes;
+                row = last;
+            }
+
+            if (upperTriangle) {
+                DistanceMatrixBuilder.mirror(matrix);
+            }
+            return matrix;
+        }
+    }
+
+    // The checked header, positioned after the version
+    private static MappedByteBuffer header(Path file, FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_BYTES) {
+            throw new IOException(file + " is not a distance matrix file");
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC) {
+            throw new IOException(file + " is not a distance matrix file");
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported distance matrix version " + version + " in " + file);
+        }
+        return header;
+    }
+
+    // Number of values stored for the rows [from, to)
+    private static long valuesBetween(int from, int to, int n, boolean upperTriangle) {
+        if (!upperTriangle) {
+            return (long) (to - from) * n;
+        }
+        long values = 0;
+        for (int i = from; i < to; i++) {
+            values += n - 1 - i;
+        }
+        return values;
+    }
+
+    // End (exclusive) of the block of rows starting at row that fits in one mapping
+    private static int lastRowOfBlock(int row, int n, int valueBytes, boolean upperTriangle) {
+        long bytes = 0;
+        int last = row;
+        while (last < n) {
+            long rowBytes = (long) (upperTriangle ? n - 1 - last : n) * valueBytes;
+            if (last > row && bytes + rowBytes > BLOCK_BYTES) {
+                break;
+            }
+            bytes += rowBytes;
+            last++;
+        }
+        return last;
+    }
+}
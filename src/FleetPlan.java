@@ -0,0 +1,74 @@
+import java.util.List;
+
+/**
+ * Routes of a multi-drone mission. Every route starts and ends at the depot (row 0) and refers to the rows
+ * of the full distance matrix. A drone may fly more than one route, one battery each, back to back.
+ */
+public final class FleetPlan {
+    private final List<RoutePlan> routes;
+    private final int[] droneOfRoute;
+    private final int drones;
+    private final long elapsedNanos;
+
+    FleetPlan(List<RoutePlan> routes, int[] droneOfRoute, int drones, long elapsedNanos) {
+        this.routes = routes;
+        this.droneOfRoute = droneOfRoute;
+        this.drones = drones;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    List<RoutePlan> getRoutes() {
+        return routes;
+    }
+
+    // The drone (0 .. drones - 1) that flies the given route
+    int getDrone(int route) {
+        return droneOfRoute[route];
+    }
+
+    int getDrones() {
+        return drones;
+    }
+
+    // Length of all routes flown by the drone
+    double getLoad(int drone) {
+        double load = 0.0;
+        for (int r = 0; r < routes.size(); r++) {
+            if (droneOfRoute[r] == drone) {
+                load += routes.get(r).getTour().getCost();
+            }
+        }
+        return load;
+    }
+
+    // Load of the busiest drone, i.e. when the whole mission is over
+    double getMakespan() {
+        double makespan = 0.0;
+        for (int drone = 0; drone < drones; drone++) {
+            makespan = Math.max(makespan, getLoad(drone));
+        }
+        return makespan;
+    }
+
+    double getTotalLength() {
+        double total = 0.0;
+        for (RoutePlan route : routes) {
+            total += route.getTour().getCost();
+        }
+        return total;
+    }
+
+    long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(String.format("%d routes on %d drones, makespan %.3f, total %.3f, planned in %.1f ms",
+                routes.size(), drones, getMakespan(), getTotalLength(), elapsedNanos / 1e6));
+        for (int r = 0; r < routes.size(); r++) {
+            text.append(System.lineSeparator()).append("  drone ").append(droneOfRoute[r]).append(": ").append(routes.get(r).getTour());
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,431 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Splits a mission over several drones so that it is over as soon as possible, with no route longer than
+ * one battery allows.
+ *
+ * The stations are swept by their angle around the depot and cut into one sector per drone, each turned into
+ * a route by cheapest insertion. A route too long for one battery is cut in two, which gives a drone a second
+ * flight. Stations are then moved and swapped between routes, among their closest stations only, whenever that
+ * shortens the longer of the two routes, or both together without making the longer one longer. This is done
+ * for several start angles of the sweep and the partition with the shortest makespan is kept.
+ *
+ * Finally every route is solved on its own, in parallel, by a {@link RoutePlanner}, and the routes are handed
+ * out longest first, each to the drone with the least work so far.
+ */
+public class FleetPlanner {
+
+    // A Tello flies for about 13 minutes on one battery
+    static final double TELLO_FLIGHT_SECONDS = 13 * 60;
+
+    // Start angles of the sweep that are tried
+    private static final int SWEEP_STARTS = 8;
+
+    // Part of the budget spent on the partition, the rest goes to solving the routes
+    private static final double PARTITION_SHARE = 0.5;
+
+    private static final double EPSILON = 1e-9;
+
+    private final int drones;
+    private final double maxRouteLength;
+    private final long latencyBudgetMillis;
+    private final int parallelism;
+
+    /**
+     * @param maxRouteLength longest route a drone can fly on one battery, in the units of the coordinates,
+     *                       e.g. {@link #TELLO_FLIGHT_SECONDS} times the cruise speed, less a reserve
+     */
+    public FleetPlanner(int drones, double maxRouteLength, long latencyBudgetMillis) {
+        this(drones, maxRouteLength, latencyBudgetMillis, Runtime.getRuntime().availableProcessors());
+    }
+
+    public FleetPlanner(int drones, double maxRouteLength, long latencyBudgetMillis, int parallelism) {
+        if (drones < 1) {
+            throw new IllegalArgumentException("At least one drone is needed, got " + drones);
+        }
+        this.drones = drones;
+        this.maxRouteLength = maxRouteLength;
+        this.latencyBudgetMillis = latencyBudgetMillis;
+        this.parallelism = parallelism;
+    }
+
+    // Plan over the chosen stations, the first one being the depot; routes refer to the positions in the list
+    public FleetPlan plan(List<Integer> stationsToVisit, Station[] stations) {
+        int n = stationsToVisit.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            Station station = stations[stationsToVisit.get(i)];
+            xs[i] = station.getX();
+            ys[i] = station.getY();
+        }
+        return plan(xs, ys);
+    }
+
+    public FleetPlan plan(double[] xs, double[] ys) {
+        long start = System.nanoTime();
+        long deadline = start + (long) (latencyBudgetMillis * 1_000_000L * PARTITION_SHARE);
+        double[][] distances = DistanceMatrixBuilder.build(xs, ys);
+        int n = xs.length;
+        for (int s = 1; s < n; s++) {
+            if (distances[0][s] + distances[s][0] > maxRouteLength) {
+                throw new IllegalArgumentException("Station " + s + " is out of range of a single flight");
+            }
+        }
+
+        Partition best = null;
+        if (n > 1) {
+            int[][] neighbours = new KdTree(xs, ys).neighbourLists(HeuristicSolver.NEIGHBOURS);
+            int[] sweep = sweepOrder(xs, ys);
+            int starts = Math.min(SWEEP_STARTS, n - 1);
+            for (int i = 0; i < starts && (best == null || System.nanoTime() < deadline); i++) {
+                Partition partition = new Partition(distances);
+                partition.split(sweep, i * (n - 1) / starts);
+                partition.merge();
+                partition.exchange(neighbours, deadline);
+                if (best == null || partition.makespan() < best.makespan() - EPSILON) {
+                    best = partition;
+                }
+            }
+        }
+
+        List<Route> routes = best == null ? List.of() : best.routes();
+        long leftMillis = latencyBudgetMillis - (System.nanoTime() - start) / 1_000_000L;
+        long routeBudget = Math.max(1, leftMillis * Math.max(1, parallelism) / Math.max(1, routes.size()));
+        RoutePlan[] plans = new RoutePlan[routes.size()];
+        IntStream.range(0, plans.length).parallel().forEach(r -> plans[r] = solve(distances, routes.get(r), routeBudget));
+
+        double[] lengths = new double[plans.length];
+        for (int r = 0; r < plans.length; r++) {
+            lengths[r] = plans[r].getTour().getCost();
+        }
+        return new FleetPlan(Arrays.asList(plans), assign(lengths, drones), drones, System.nanoTime() - start);
+    }
+
+    // Stations other than the depot, by their angle around it
+    private static int[] sweepOrder(double[] xs, double[] ys) {
+        double[] angles = new double[xs.length];
+        for (int s = 1; s < xs.length; s++) {
+            angles[s] = Math.atan2(ys[s] - ys[0], xs[s] - xs[0]);
+        }
+        return IntStream.range(1, xs.length).boxed()
+                .sorted(Comparator.comparingDouble(s -> angles[s]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // Solves the route on its own, unless the solver comes back with something longer than the route already is
+    private static RoutePlan solve(double[][] distances, Route route, long budgetMillis) {
+        int m = route.size + 1;
+        int[] rows = new int[m];
+        System.arraycopy(route.stops, 0, rows, 1, route.size);
+        double[][] sub = new double[m][m];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                sub[i][j] = distances[rows[i]][rows[j]];
+            }
+        }
+
+        RoutePlan plan = new RoutePlanner(budgetMillis, 1).plan(sub);
+        int[] path = new int[m + 1];
+        int[] local = plan.getTour().getPath();
+        for (int i = 0; i <= m; i++) {
+            path[i] = rows[local[i]];
+        }
+        Tour tour = Tour.of(path, distances);
+
+        if (tour.getCost() > route.length + EPSILON) {
+            int[] asInserted = new int[m + 1];
+            System.arraycopy(route.stops, 0, asInserted, 1, route.size);
+            tour = Tour.of(asInserted, distances);
+        }
+        return new RoutePlan(tour, plan.getLowerBound(), plan.getSolver(), plan.getElapsedNanos());
+    }
+
+    // Longest processing time first: every route, longest first, goes to the drone with the least work so far
+    static int[] assign(double[] lengths, int drones) {
+        Integer[] order = new Integer[lengths.length];
+        for (int r = 0; r < order.length; r++) {
+            order[r] = r;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(lengths[b], lengths[a]));
+
+        int[] droneOfRoute = new int[lengths.length];
+        double[] loads = new double[drones];
+        for (int r : order) {
+            int least = 0;
+            for (int drone = 1; drone < drones; drone++) {
+                if (loads[drone] < loads[least]) {
+                    least = drone;
+                }
+            }
+            droneOfRoute[r] = least;
+            loads[least] += lengths[r];
+        }
+        return droneOfRoute;
+    }
+
+    /* ---------------------------------- PARTITION ---------------------------------- */
+
+    private final class Partition {
+        private final double[][] d;
+        private final List<Route> routes = new ArrayList<>();
+        private final Route[] routeOf;
+
+        Partition(double[][] d) {
+            this.d = d;
+            this.routeOf = new Route[d.length];
+        }
+
+        // One sector of the sweep, started at the given offset, per drone; sectors too long for a battery are cut
+        void split(int[] sweep, int offset) {
+            int stations = sweep.length;
+            int sectors = Math.min(drones, stations);
+            int from = 0;
+            for (int sector = 0; sector < sectors; sector++) {
+                int to = (int) ((long) stations * (sector + 1) / sectors);
+                int[] members = new int[to - from];
+                for (int i = from; i < to; i++) {
+                    members[i - from] = sweep[(i + offset) % stations];
+                }
+                addRoute(members);
+                from = to;
+            }
+
+            for (int r = 0; r < routes.size(); r++) {
+                Route route = routes.get(r);
+                while (route.length > maxRouteLength + EPSILON) {
+                    // The route's own order keeps its halves compact
+                    int half = route.size / 2;
+                    routes.remove(r);
+                    addRoute(Arrays.copyOfRange(route.stops, half, route.size));
+                    route = addRoute(Arrays.copyOf(route.stops, half), r);
+                }
+            }
+        }
+
+        private Route addRoute(int[] members) {
+            return addRoute(members, routes.size());
+        }
+
+        private Route addRoute(int[] members, int index) {
+            Route route = new Route(members.length);
+            for (int station : members) {
+                route.insert(station, route.insertion(d, station, -1), route.bestPosition);
+                routeOf[station] = route;
+            }
+            routes.add(index, route);
+            return route;
+        }
+
+        // Spreads the stops of the shortest route over the others, as long as there are more routes than drones and the mission gets no longer
+        void merge() {
+            while (routes.size() > drones) {
+                Partition trial = copy();
+                Route shortest = trial.routes.get(0);
+                for (Route route : trial.routes) {
+                    if (route.length < shortest.length) {
+                        shortest = route;
+                    }
+                }
+                trial.routes.remove(shortest);
+                for (int i = 0; i < shortest.size; i++) {
+                    if (!trial.insertAnywhere(shortest.stops[i])) {
+                        return;
+                    }
+                }
+                if (trial.makespan() > makespan() + EPSILON) {
+                    return;
+                }
+                routes.clear();
+                routes.addAll(trial.routes);
+                System.arraycopy(trial.routeOf, 0, routeOf, 0, routeOf.length);
+            }
+        }
+
+        // Cheapest insertion over all routes that stay short enough, false if there is none
+        private boolean insertAnywhere(int station) {
+            Route best = null;
+            double bestAdded = Double.MAX_VALUE;
+            int bestPosition = 0;
+            for (Route route : routes) {
+                double added = route.insertion(d, station, -1);
+                if (added < bestAdded && route.length + added <= maxRouteLength + EPSILON) {
+                    best = route;
+                    bestAdded = added;
+                    bestPosition = route.bestPosition;
+                }
+            }
+            if (best == null) {
+                return false;
+            }
+            best.insert(station, bestAdded, bestPosition);
+            routeOf[station] = best;
+            return true;
+        }
+
+        private Partition copy() {
+            Partition copy = new Partition(d);
+            for (Route route : routes) {
+                Route same = new Route(route.size);
+                System.arraycopy(route.stops, 0, same.stops, 0, route.size);
+                same.size = route.size;
+                same.length = route.length;
+                copy.routes.add(same);
+                for (int i = 0; i < route.size; i++) {
+                    copy.routeOf[route.stops[i]] = same;
+                }
+            }
+            return copy;
+        }
+
+        // Moves and swaps stations between routes until nothing helps any more or the time is up
+        void exchange(int[][] neighbours, long deadline) {
+            boolean improved = true;
+            while (improved && System.nanoTime() < deadline) {
+                improved = false;
+                for (int s = 1; s < d.length; s++) {
+                    if (relocateOrSwap(s, neighbours[s])) {
+                        improved = true;
+                    }
+                }
+            }
+        }
+
+        private boolean relocateOrSwap(int s, int[] candidates) {
+            for (int t : candidates) {
+                Route a = routeOf[s];
+                Route b = routeOf[t];
+                if (t == 0 || a == b) {
+                    continue;
+                }
+                int p = a.indexOf(s);
+                int q = b.indexOf(t);
+                double removeS = a.removal(d, p);
+
+                double moved = b.length + b.insertion(d, s, -1);
+                if (moved <= maxRouteLength + EPSILON && better(a.length, b.length, a.length - removeS, moved)) {
+                    a.remove(p, removeS);
+                    b.insert(s, moved - b.length, b.bestPosition);
+                    routeOf[s] = b;
+                    return true;
+                }
+
+                double newA = a.length - removeS + a.insertion(d, t, p);
+                double newB = b.length - b.removal(d, q) + b.insertion(d, s, q);
+                if (newA <= maxRouteLength + EPSILON && newB <= maxRouteLength + EPSILON && better(a.length, b.length, newA, newB)) {
+                    a.remove(p, removeS);
+                    b.remove(q, b.removal(d, q));
+                    a.insert(t, a.insertion(d, t, -1), a.bestPosition);
+                    b.insert(s, b.insertion(d, s, -1), b.bestPosition);
+                    routeOf[s] = b;
+                    routeOf[t] = a;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Shorter longest route of the two, or shorter in total without a longer longest route
+        private boolean better(double a, double b, double newA, double newB) {
+            double longest = Math.max(a, b);
+            double newLongest = Math.max(newA, newB);
+            return newLongest < longest - EPSILON || (newLongest <= longest + EPSILON && newA + newB < a + b - EPSILON);
+        }
+
+        List<Route> routes() {
+            List<Route> flown = new ArrayList<>();
+            for (Route route : routes) {
+                if (route.size > 0) {
+                    flown.add(route);
+                }
+            }
+            return flown;
+        }
+
+        double makespan() {
+            List<Route> flown = routes();
+            double[] lengths = new double[flown.size()];
+            for (int r = 0; r < lengths.length; r++) {
+                lengths[r] = flown.get(r).length;
+            }
+            int[] droneOfRoute = assign(lengths, drones);
+            double[] loads = new double[drones];
+            double makespan = 0.0;
+            for (int r = 0; r < lengths.length; r++) {
+                loads[droneOfRoute[r]] += lengths[r];
+                makespan = Math.max(makespan, loads[droneOfRoute[r]]);
+            }
+            return makespan;
+        }
+    }
+
+    // Stops of a route in flight order, the depot before the first and after the last one
+    private static final class Route {
+        int[] stops;
+        int size;
+        double length;
+
+        // Where the last call to insertion() would put the station
+        int bestPosition;
+
+        Route(int capacity) {
+            this.stops = new int[Math.max(4, capacity)];
+        }
+
+        int indexOf(int station) {
+            for (int i = 0; i < size; i++) {
+                if (stops[i] == station) {
+                    return i;
+                }
+            }
+            throw new IllegalStateException("Station " + station + " is not on the route");
+        }
+
+        // Length saved by taking out the stop at position p
+        double removal(double[][] d, int p) {
+            int prev = p == 0 ? 0 : stops[p - 1];
+            int next = p + 1 == size ? 0 : stops[p + 1];
+            return d[prev][stops[p]] + d[stops[p]][next] - d[prev][next];
+        }
+
+        // Cheapest length added by the station, as if the stop at position skip (-1 for none) was not there
+        double insertion(double[][] d, int station, int skip) {
+            double best = Double.MAX_VALUE;
+            int prev = 0;
+            for (int i = 0; i <= size; i++) {
+                if (i == skip) {
+                    continue;
+                }
+                int next = i < size ? stops[i] : 0;
+                double added = d[prev][station] + d[station][next] - d[prev][next];
+                if (added < best) {
+                    best = added;
+                    bestPosition = i;
+                }
+                prev = next;
+            }
+            return best;
+        }
+
+        void insert(int station, double added, int position) {
+            if (size == stops.length) {
+                stops = Arrays.copyOf(stops, size * 2);
+            }
+            System.arraycopy(stops, position, stops, position + 1, size - position);
+            stops[position] = station;
+            size++;
+            length += added;
+        }
+
+        void remove(int position, double saved) {
+            System.arraycopy(stops, position + 1, stops, position, size - position - 1);
+            size--;
+            length -= saved;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder events of the planner and of flight control, for seeing where the time of a mission goes:
+ *
+ *   java -XX:StartFlightRecording=filename=mission.jfr,settings=profile Main
+ *   jfr print --events 'dronenavigation.*' mission.jfr
+ *
+ * Events cost next to nothing while no recording is running: they are created and checked with
+ * shouldCommit() on the thread that does the work, which the JIT reduces to a flag test. The same numbers are
+ * also kept in the {@link MetricsRegistry}, which needs no recording.
+ */
+final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    @Name("dronenavigation.Solve")
+    @Label("Solve")
+    @Category({"Drone Navigation", "Planning"})
+    @Description("One tour solved, from the distance matrix to the tour")
+    @StackTrace(false)
+    static final class Solve extends Event {
+        @Label("Solver")
+        String solver;
+
+        @Label("Stations")
+        int stations;
+
+        @Label("Cost")
+        double cost;
+
+        @Label("Lower Bound")
+        double lowerBound;
+
+        @Label("Nodes Expanded")
+        @Description("Branch-and-bound nodes whose children were tried")
+        long nodesExpanded;
+
+        @Label("Nodes Pruned")
+        @Description("Branch-and-bound nodes cut by the bound")
+        long nodesPruned;
+
+        @Label("Cells")
+        @Description("Held-Karp table cells filled")
+        long cells;
+
+        @Label("Cells per Second")
+        double cellsPerSecond;
+    }
+
+    @Name("dronenavigation.MatrixBuild")
+    @Label("Distance Matrix Build")
+    @Category({"Drone Navigation", "Planning"})
+    @StackTrace(false)
+    static final class MatrixBuild extends Event {
+        @Label("Stations")
+        int stations;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Parallel")
+        boolean parallel;
+    }
+
+    @Name("dronenavigation.Command")
+    @Label("Drone Command")
+    @Category({"Drone Navigation", "Flight Control"})
+    @Description("One command done, acknowledged or given up on, committed by the event loop")
+    @StackTrace(false)
+    static final class Command extends Event {
+        @Label("Drone")
+        String drone;
+
+        @Label("Command")
+        String command;
+
+        @Label("Reply")
+        String reply;
+
+        @Label("Attempts")
+        int attempts;
+
+        @Label("Timed Out")
+        @Description("At least one attempt got no reply in time")
+        boolean timedOut;
+
+        @Label("Round Trip")
+        @Description("From sending the last attempt to its reply, -1 if it got none")
+        @Timespan
+        long roundTrip;
+
+        @Label("Latency")
+        @Description("From submitting the command to its end, including the queue, retries and backoff")
+        @Timespan
+        long latency;
+    }
+}
@@ -0,0 +1,537 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetSocketAddress;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only binary journal of a mission: every command submitted, every attempt sent, every reply, timeout
+ * and finished command, every telemetry state, and the stations and the tour that were planned. A session is
+ * read back with {@link #read} and replayed with {@link FlightReplay}.
+ *
+ * The file is mapped once, at its full capacity, and every writer reserves the bytes of its record with one
+ * atomic add on the end position, so the event loop of the fleet, the telemetry thread and the planner write
+ * at the same time without locks, system calls or allocation. A writer first puts the length of its record,
+ * then its body, and last its type with a release store, which commits it; a record whose writer died before
+ * that is skipped by the reader. Records that do not fit any more are counted as dropped, never waited for.
+ *
+ * Layout (little-endian):
+ *   int   magic "FJRN"
+ *   short version
+ *   short reserved
+ *   long  start, in milliseconds since the epoch
+ *   long  end of the records, 0 if the journal was not closed
+ *   long  records dropped because the journal was full
+ * up to HEADER_BYTES, followed by records aligned to 8 bytes:
+ *   int   length, with the header
+ *   short type, 0 until committed
+ *   short drone, the id a DRONE record gave its address
+ *   long  nanoseconds since the journal was created
+ * and the body of the type. Text is a short length followed by ASCII.
+ */
+final class FlightJournal implements Closeable {
+
+    static final int MAGIC = 0x4e524a46; // "FJRN" read little-endian
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_HEADER_BYTES = 16;
+
+    // Some four hours of telemetry at 10 Hz, far more than a battery lasts
+    static final int DEFAULT_CAPACITY = 16 << 20;
+
+    // Record types
+    static final short DRONE = 1;       // text: address of the drone, host:port
+    static final short SUBMITTED = 2;   // text: command
+    static final short SENT = 3;        // int: attempt
+    static final short REPLIED = 4;     // long: round trip in ns, text: reply
+    static final short LATE = 5;        // text: reply that came when no attempt was waiting for it
+    static final short TIMED_OUT = 6;   // int: attempt
+    static final short FINISHED = 7;    // long: latency in ns, long: round trip in ns or -1, int: attempts, byte: timed out, byte: ok
+    static final short STATE = 8;       // TelloState.FIELDS floats, NaN for fields the line did not have
+    static final short MISSION = 9;     // int: stations, then x and y of every station as doubles, in metres
+    static final short PLAN = 10;       // int: positions, then the closed tour as ints
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong end = new AtomicLong(HEADER_BYTES);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Map<InetSocketAddress, Integer> drones = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private FlightJournal(FileChannel channel, int capacity) throws IOException {
+        this.channel = channel;
+        this.capacity = capacity;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putLong(8, System.currentTimeMillis());
+    }
+
+    // A new journal at the file, replacing what was there; the file takes up no more disk than is written
+    static FlightJournal create(Path file, int capacity) throws IOException {
+        if (capacity < HEADER_BYTES + 1024) {
+            throw new IllegalArgumentException("A journal needs at least " + (HEADER_BYTES + 1024) + " bytes, got " + capacity);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new FlightJournal(channel, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /* ------------------------------------ WRITERS ----------------------------------- */
+
+    void submitted(InetSocketAddress drone, long now, String command) {
+        int id = id(drone);
+        int at = reserve(textBytes(command));
+        if (at >= 0) {
+            putText(at + RECORD_HEADER_BYTES, command);
+            commit(at, SUBMITTED, id, now);
+        }
+    }
+
+    void sent(InetSocketAddress drone, long now, int attempt) {
+        attempt(SENT, drone, now, attempt);
+    }
+
+    void timedOut(InetSocketAddress drone, long now, int attempt) {
+        attempt(TIMED_OUT, drone, now, attempt);
+    }
+
+    void replied(InetSocketAddress drone, long now, String reply, long roundTrip) {
+        int id = id(drone);
+        int at = reserve(Long.BYTES + textBytes(reply));
+        if (at >= 0) {
+            buffer.putLong(at + RECORD_HEADER_BYTES, roundTrip);
+            putText(at + RECORD_HEADER_BYTES + Long.BYTES, reply);
+            commit(at, REPLIED, id, now);
+        }
+    }
+
+    void late(InetSocketAddress drone, long now, String reply) {
+        int id = id(drone);
+        int at = reserve(textBytes(reply));
+        if (at >= 0) {
+            putText(at + RECORD_HEADER_BYTES, reply);
+            commit(at, LATE, id, now);
+        }
+    }
+
+    void finished(InetSocketAddress drone, long now, long latency, long roundTrip, int attempts, boolean timedOut, boolean ok) {
+        int id = id(drone);
+        int at = reserve(2 * Long.BYTES + Integer.BYTES + 2);
+        if (at >= 0) {
+            int body = at + RECORD_HEADER_BYTES;
+            buffer.putLong(body, latency);
+            buffer.putLong(body + 8, roundTrip);
+            buffer.putInt(body + 16, attempts);
+            buffer.put(body + 20, (byte) (timedOut ? 1 : 0));
+            buffer.put(body + 21, (byte) (ok ? 1 : 0));
+            commit(at, FINISHED, id, now);
+        }
+    }
+
+    // The state parsed into values[offset] to values[offset + TelloState.FIELDS - 1]
+    void state(InetSocketAddress drone, long now, double[] values, int offset) {
+        int id = id(drone);
+        int at = reserve(TelloState.FIELDS * Float.BYTES);
+        if (at >= 0) {
+            int body = at + RECORD_HEADER_BYTES;
+            for (int field = 0; field < TelloState.FIELDS; field++) {
+                buffer.putFloat(body + field * Float.BYTES, (float) values[offset + field]);
+            }
+            commit(at, STATE, id, now);
+        }
+    }
+
+    void mission(Station[] stations) {
+        int at = reserve(Integer.BYTES + stations.length * 2 * Double.BYTES);
+        if (at >= 0) {
+            int body = at + RECORD_HEADER_BYTES;
+            buffer.putInt(body, stations.length);
+            for (int i = 0; i < stations.length; i++) {
+                buffer.putDouble(body + 4 + i * 16, stations[i].getX());
+                buffer.putDouble(body + 12 + i * 16, stations[i].getY());
+            }
+            commit(at, MISSION, 0, System.nanoTime());
+        }
+    }
+
+    void plan(int[] path) {
+        int at = reserve(Integer.BYTES * (1 + path.length));
+        if (at >= 0) {
+            int body = at + RECORD_HEADER_BYTES;
+            buffer.putInt(body, path.length);
+            for (int i = 0; i < path.length; i++) {
+                buffer.putInt(body + 4 + i * 4, path[i]);
+            }
+            commit(at, PLAN, 0, System.nanoTime());
+        }
+    }
+
+    // Bytes the records written so far take up, with the header
+    long getSize() {
+        return Math.min(end.get(), capacity);
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the end and the dropped records into the header and forces the journal to disk. Records written
+     * after this are dropped; close the journal after whatever writes to it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.putLong(16, getSize());
+        buffer.putLong(24, dropped.get());
+        buffer.force();
+        channel.close();
+    }
+
+    private void attempt(short type, InetSocketAddress drone, long now, int attempt) {
+        int id = id(drone);
+        int at = reserve(Integer.BYTES);
+        if (at >= 0) {
+            buffer.putInt(at + RECORD_HEADER_BYTES, attempt);
+            commit(at, type, id, now);
+        }
+    }
+
+    // Position of a record with a body of the given size, -1 if it does not fit or the journal is closed
+    private int reserve(int bodyBytes) {
+        int length = (RECORD_HEADER_BYTES + bodyBytes + 7) & ~7;
+        if (closed) {
+            dropped.incrementAndGet();
+            return -1;
+        }
+        long at = end.getAndAdd(length);
+        if (at + length > capacity) {
+            dropped.incrementAndGet();
+            return -1;
+        }
+        buffer.putInt((int) at, length);
+        return (int) at;
+    }
+
+    // Type and drone in one int, the type in the lower half, stored last
+    private void commit(int at, short type, int drone, long now) {
+        buffer.putLong(at + 8, now - startNanos);
+        INTS.setRelease(buffer, at + 4, drone << 16 | type);
+    }
+
+    // Id of the drone from 1, written in a DRONE record before the first record of the drone
+    private int id(InetSocketAddress drone) {
+        Integer id = drones.get(drone);
+        return id != null ? id : register(drone);
+    }
+
+    private synchronized int register(InetSocketAddress drone) {
+        Integer id = drones.get(drone);
+        if (id != null) {
+            return id;
+        }
+        int next = drones.size() + 1;
+        String address = drone.getAddress().getHostAddress() + ":" + drone.getPort();
+        int at = reserve(textBytes(address));
+        if (at >= 0) {
+            putText(at + RECORD_HEADER_BYTES, address);
+            commit(at, DRONE, next, System.nanoTime());
+        }
+        drones.put(drone, next);
+        return next;
+    }
+
+    private static int textBytes(String text) {
+        return Short.BYTES + Math.min(text.length(), Short.MAX_VALUE);
+    }
+
+    private void putText(int at, String text) {
+        int length = Math.min(text.length(), Short.MAX_VALUE);
+        buffer.putShort(at, (short) length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            buffer.put(at + 2 + i, (byte) (c < 128 ? c : '?'));
+        }
+    }
+
+    /* ------------------------------------ READING ----------------------------------- */
+
+    /**
+     * Reads a journal, closed or not: without an end in the header it is read up to the first record that was
+     * never started.
+     */
+    static Session read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException(file + " is not a flight journal");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a flight journal");
+            }
+            short version = buffer.getShort(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported flight journal version " + version + " in " + file);
+            }
+            long end = buffer.getLong(16);
+            boolean complete = end != 0;
+            int limit = (int) (complete ? Math.min(end, size) : size);
+
+            Session session = new Session(buffer.getLong(8), buffer.getLong(24), complete);
+            int at = HEADER_BYTES;
+            while (at + RECORD_HEADER_BYTES <= limit) {
+                int length = buffer.getInt(at);
+                if (length < RECORD_HEADER_BYTES || at + length > limit) {
+                    break;
+                }
+                int header = buffer.getInt(at + 4);
+                short type = (short) header;
+                if (type == 0) {
+                    session.torn++;
+                } else {
+                    session.add(buffer, at, type, header >>> 16);
+                }
+                at += length;
+            }
+            return session;
+        }
+    }
+
+    private static String text(MappedByteBuffer buffer, int at) {
+        int length = buffer.getShort(at);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) buffer.get(at + 2 + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The records of a journal, in the order they were written.
+     */
+    static final class Session {
+        private final long startMillis;
+        private final long dropped;
+        private final boolean complete;
+        private final List<String> drones = new ArrayList<>();
+        private final List<Entry> entries = new ArrayList<>();
+        private double[][] stations;
+        private int[] plan;
+        private int torn;
+
+        private Session(long startMillis, long dropped, boolean complete) {
+            this.startMillis = startMillis;
+            this.dropped = dropped;
+            this.complete = complete;
+        }
+
+        private void add(MappedByteBuffer buffer, int at, short type, int drone) {
+            long nanos = buffer.getLong(at + 8);
+            int body = at + RECORD_HEADER_BYTES;
+            switch (type) {
+                case DRONE:
+                    while (drones.size() < drone) {
+                        drones.add(null);
+                    }
+                    drones.set(drone - 1, text(buffer, body));
+                    return;
+                case MISSION: {
+                    int n = buffer.getInt(body);
+                    stations = new double[2][n];
+                    for (int i = 0; i < n; i++) {
+                        stations[0][i] = buffer.getDouble(body + 4 + i * 16);
+                        stations[1][i] = buffer.getDouble(body + 12 + i * 16);
+                    }
+                    return;
+                }
+                case PLAN: {
+                    int n = buffer.getInt(body);
+                    plan = new int[n];
+                    for (int i = 0; i < n; i++) {
+                        plan[i] = buffer.getInt(body + 4 + i * 4);
+                    }
+                    return;
+                }
+                default:
+                    break;
+            }
+
+            Entry entry = new Entry(type, drone - 1, nanos);
+            switch (type) {
+                case SUBMITTED:
+                case LATE:
+                    entry.text = text(buffer, body);
+                    break;
+                case SENT:
+                case TIMED_OUT:
+                    entry.attempts = buffer.getInt(body);
+                    break;
+                case REPLIED:
+                    entry.roundTrip = buffer.getLong(body);
+                    entry.text = text(buffer, body + 8);
+                    break;
+                case FINISHED:
+                    entry.latency = buffer.getLong(body);
+                    entry.roundTrip = buffer.getLong(body + 8);
+                    entry.attempts = buffer.getInt(body + 16);
+                    entry.timedOut = buffer.get(body + 20) != 0;
+                    entry.ok = buffer.get(body + 21) != 0;
+                    break;
+                case STATE:
+                    entry.values = new double[TelloState.FIELDS];
+                    for (int field = 0; field < TelloState.FIELDS; field++) {
+                        entry.values[field] = buffer.getFloat(body + field * Float.BYTES);
+                    }
+                    break;
+                default:
+                    // A type from a later version, kept without its body
+                    break;
+            }
+            entries.add(entry);
+        }
+
+        long getStartMillis() {
+            return startMillis;
+        }
+
+        // Records the journal had no room for
+        long getDropped() {
+            return dropped;
+        }
+
+        // Whether the journal was closed, rather than left behind by a process that died
+        boolean isComplete() {
+            return complete;
+        }
+
+        // Records that were reserved but never committed
+        int getTorn() {
+            return torn;
+        }
+
+        // Addresses of the drones as host:port, indexed by Entry.getDrone()
+        List<String> getDrones() {
+            return Collections.unmodifiableList(drones);
+        }
+
+        List<Entry> getEntries() {
+            return Collections.unmodifiableList(entries);
+        }
+
+        // x and y of the mission stations, null if the journal has none
+        double[][] getStations() {
+            return stations;
+        }
+
+        // The planned closed tour over the mission stations, null if the journal has none
+        int[] getPlan() {
+            return plan;
+        }
+
+        // The entries of one type for one drone, in order
+        List<Entry> of(short type, int drone) {
+            List<Entry> matching = new ArrayList<>();
+            for (Entry entry : entries) {
+                if (entry.type == type && entry.drone == drone) {
+                    matching.add(entry);
+                }
+            }
+            return matching;
+        }
+    }
+
+    /**
+     * One record of a session. Fields a type does not have are left at 0, null or -1.
+     */
+    static final class Entry {
+        private final short type;
+        private final int drone;
+        private final long nanos;
+        private String text;
+        private int attempts;
+        private long roundTrip = -1;
+        private long latency = -1;
+        private boolean timedOut;
+        private boolean ok;
+        private double[] values;
+
+        private Entry(short type, int drone, long nanos) {
+            this.type = type;
+            this.drone = drone;
+            this.nanos = nanos;
+        }
+
+        short getType() {
+            return type;
+        }
+
+        // Index into Session.getDrones(), -1 for none
+        int getDrone() {
+            return drone;
+        }
+
+        // Since the journal was created
+        long getNanos() {
+            return nanos;
+        }
+
+        // Command or reply
+        String getText() {
+            return text;
+        }
+
+        // Attempt number, or all attempts of a finished command
+        int getAttempts() {
+            return attempts;
+        }
+
+        long getRoundTripNanos() {
+            return roundTrip;
+        }
+
+        // From submitting to finishing the command
+        long getLatencyNanos() {
+            return latency;
+        }
+
+        boolean isTimedOut() {
+            return timedOut;
+        }
+
+        boolean isOk() {
+            return ok;
+        }
+
+        // The fields of a state, indexed like TelloState
+        double[] getValues() {
+            return values;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Flies a mission while it is still being planned: the planner publishes the legs of the tour into a bounded
+ * queue, the compiler turns every leg into commands as it comes, and the drone takes them off a second
+ * bounded queue, one at a time.
+ *
+ * Take-off does not depend on the route, so it is sent as soon as the drone is connected. The first tour is
+ * planned in a small part of the latency budget, so that its first legs go out at once, and the rest of the
+ * budget goes into improving it while the drone flies. A leg is only taken out of the tour when the queue has
+ * room for it, which is just before the drone gets to it; until then a heuristic plan keeps being improved
+ * from the last published station on, with the published part fixed, until a round brings no gain or the
+ * budget is spent. Exact plans are published as they are. Writing the commands to a file is an optional tap on the compiler's
+ * output and never holds up the drone.
+ *
+ * Tours are the shortest ones by default. Given a {@link FlightTimeModel}, the planner minimises flight time
+ * with the {@link FlightTimeSolver} instead, turns and stops included, and so does the improvement of the tail.
+ * Given an {@link ObstacleRouter}, whose distances should then be the pipeline's, every leg is flown round the
+ * corners of its detour.
+ */
+public class FlightPipeline implements AutoCloseable {
+
+    // Legs and commands that may be waiting between the stages
+    static final int LEGS_AHEAD = 2;
+    static final int COMMANDS_AHEAD = 4;
+
+    // Time the first tour is planned in, at most
+    static final long INITIAL_PLAN_MILLIS = 50;
+
+    // Time the planner improves the tail for, every time it finds the leg queue full
+    static final long IMPROVE_SLICE_MILLIS = 20;
+
+    // Ends the leg queue
+    private static final int NO_LEG = -1;
+
+    // Ends the command queue; compared by reference, so no command can be taken for it
+    private static final String END = new String("end of flight");
+
+    private final FlightPlanCompiler compiler;
+    private final Station[] stations;
+    private final double[][] distances;
+    private final long latencyBudgetMillis;
+    private Path tap;
+    private FlightTimeModel timeModel;
+    private ObstacleRouter router;
+
+    private final BlockingQueue<Integer> legs = new ArrayBlockingQueue<>(LEGS_AHEAD);
+    private final BlockingQueue<String> commands = new ArrayBlockingQueue<>(COMMANDS_AHEAD);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final List<Thread> stages = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch planned = new CountDownLatch(1);
+    private volatile RoutePlan plan;
+    private volatile int published = 1;
+    private long started = -1;
+    private long firstCommandNanos = -1;
+
+    /**
+     * @param stations  the station of every row of the distance matrix, row 0 being the control station
+     *                  the drone takes off from
+     * @param distances the distance matrix of the mission
+     */
+    public FlightPipeline(FlightPlanCompiler compiler, Station[] stations, double[][] distances, long latencyBudgetMillis) {
+        if (stations.length != distances.length) {
+            throw new IllegalArgumentException("Got " + stations.length + " stations for a matrix of " + distances.length + " rows");
+        }
+        this.compiler = compiler;
+        this.stations = stations;
+        this.distances = distances;
+        this.latencyBudgetMillis = latencyBudgetMillis;
+    }
+
+    // Also writes every command to the file, as it is compiled
+    public FlightPipeline tap(Path file) {
+        if (started >= 0) {
+            throw new IllegalStateException("The pipeline is already running");
+        }
+        this.tap = file;
+        return this;
+    }
+
+    // Plans the tour of least flight time under the model, which must be over the same stations
+    public FlightPipeline timed(FlightTimeModel model) {
+        if (started >= 0) {
+            throw new IllegalStateException("The pipeline is already running");
+        }
+        if (model.size() != stations.length) {
+            throw new IllegalArgumentException("Got a time model of " + model.size() + " stations for " + stations.length + " stations");
+        }
+        this.timeModel = model;
+        return this;
+    }
+
+    // Flies every leg round the obstacles, through the corners the router found for it
+    public FlightPipeline avoiding(ObstacleRouter obstacles) {
+        if (started >= 0) {
+            throw new IllegalStateException("The pipeline is already running");
+        }
+        if (obstacles.getDistances().length != stations.length) {
+            throw new IllegalArgumentException("Got a router of " + obstacles.getDistances().length + " stations for " + stations.length + " stations");
+        }
+        this.router = obstacles;
+        return this;
+    }
+
+    // Starts planning and compiling, e.g. while the drone is still being connected
+    public synchronized void start() {
+        if (started >= 0) {
+            return;
+        }
+        started = System.nanoTime();
+        stages.add(stage("flight-planner", this::planLegs));
+        stages.add(stage("flight-compiler", this::compileLegs));
+    }
+
+    /**
+     * Sends every command to the drone as soon as it is compiled and returns the results. On the first failed
+     * command other than land the drone is landed and the mission ends there. However the flight ends, even
+     * with the drone throwing, the planner and the compiler are stopped before this returns.
+     */
+    public List<CommandResult> fly(Function<String, CommandResult> drone) {
+        start();
+        List<CommandResult> results = new ArrayList<>();
+        String last = null;
+        try {
+            try {
+                while (true) {
+                    String command = commands.take();
+                    if (command == END) {
+                        break;
+                    }
+                    if (firstCommandNanos < 0) {
+                        firstCommandNanos = System.nanoTime() - started;
+                    }
+                    CommandResult result = drone.apply(command);
+                    results.add(result);
+                    last = command;
+                    if (!result.isOk() && !command.equals("land")) {
+                        results.add(drone.apply("land"));
+                        return results;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            Throwable error = failure.get();
+            if (error != null || Thread.currentThread().isInterrupted()) {
+                // Whatever went wrong, the drone does not stay in the air
+                if (last != null && !last.equals("land")) {
+                    results.add(drone.apply("land"));
+                }
+                if (error != null) {
+                    throw new IllegalStateException("Flight pipeline failed", error);
+                }
+            }
+            return results;
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Thread stage : stages) {
+            stage.interrupt();
+        }
+    }
+
+    /* ------------------------------------ STAGES ------------------------------------ */
+
+    private void planLegs() throws InterruptedException {
+        long initial = Math.min(latencyBudgetMillis, INITIAL_PLAN_MILLIS);
+        try {
+            plan = timeModel == null ? new RoutePlanner(initial).plan(distances)
+                    : new FlightTimeSolver(initial).plan(timeModel);
+        } finally {
+            planned.countDown();
+        }
+        int[] path = plan.getTour().getPath();
+        boolean improve = plan.getGap() > 0.0;
+        long deadline = started + latencyBudgetMillis * 1_000_000L;
+
+        long round = 0;
+        int next = 1;
+        while (next < path.length) {
+            if (!improve || next >= path.length - 3) {
+                // Nothing left to improve, wait for room
+                legs.put(path[next]);
+            } else if (!legs.offer(path[next])) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                long left = (deadline - System.nanoTime()) / 1_000_000;
+                if (left <= 0) {
+                    improve = false;
+                    continue;
+                }
+                long slice = Math.min(IMPROVE_SLICE_MILLIS, left);
+                Tour better = timeModel == null ? new HeuristicSolver(slice, true, ++round).improve(distances, path, next)
+                        : new FlightTimeSolver(slice).improve(timeModel, path, next);
+                if (better.getCost() < plan.getTour().getCost()) {
+                    plan = new RoutePlan(better, plan.getLowerBound(), plan.getSolver(), plan.getElapsedNanos());
+                    path = better.getPath();
+                } else {
+                    // The tail is as good as the search gets it, fixing more of the tour will not help
+                    improve = false;
+                }
+                continue;
+            }
+            published = ++next;
+        }
+        legs.put(NO_LEG);
+    }
+
+    private void compileLegs() throws InterruptedException, IOException {
+        FlightPlanCompiler.Flight flight = compiler.new Flight(stations[0].getX(), stations[0].getY());
+        try (BufferedWriter file = tap == null ? null : Files.newBufferedWriter(tap, StandardCharsets.UTF_8)) {
+            emit(flight.takeOff(), file);
+            int from = 0;
+            while (true) {
+                int row = legs.take();
+                if (row == NO_LEG) {
+                    break;
+                }
+                if (router != null) {
+                    for (double[] corner : router.detour(from, row)) {
+                        emit(flight.flyTo(corner[0], corner[1], false), file);
+                    }
+                }
+                emit(flight.flyTo(stations[row].getX(), stations[row].getY(), true), file);
+                from = row;
+            }
+            emit(flight.land(), file);
+        }
+        commands.put(END);
+    }
+
+    private void emit(List<String> compiled, BufferedWriter file) throws InterruptedException, IOException {
+        for (String command : compiled) {
+            commands.put(command);
+            if (file != null) {
+                file.write(command);
+                file.newLine();
+            }
+        }
+        if (file != null) {
+            file.flush();
+        }
+    }
+
+    // A daemon thread that ends both queues when its stage fails, so that the drone is never left waiting
+    private Thread stage(String name, Stage body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                // Closed
+            } catch (IOException e) {
+                fail(new UncheckedIOException(e));
+            } catch (RuntimeException | Error e) {
+                fail(e);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void fail(Throwable error) {
+        failure.compareAndSet(null, error);
+        close();
+        legs.clear();
+        legs.offer(NO_LEG);
+        commands.clear();
+        commands.offer(END);
+    }
+
+    private interface Stage {
+        void run() throws InterruptedException, IOException;
+    }
+
+    /* ------------------------------------ STATE ------------------------------------ */
+
+    /**
+     * Waits for the first plan and returns the best one so far: the published part of the tour followed by
+     * the best tail found for the rest, with the lower bound of the first plan.
+     */
+    RoutePlan awaitPlan() throws InterruptedException {
+        start();
+        planned.await();
+        if (plan == null) {
+            throw new IllegalStateException("Planning failed", failure.get());
+        }
+        return plan;
+    }
+
+    // Number of positions of the tour that are published, starting with the control station
+    int getPublished() {
+        return published;
+    }
+
+    // Time from the start of the pipeline to the first command being sent, -1 before that
+    long getFirstCommandNanos() {
+        return firstCommandNanos;
+    }
+}
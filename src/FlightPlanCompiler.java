@@ -0,0 +1,273 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a planned tour into as few Tello SDK commands as possible, on a numeric model of where the drone is.
+ *
+ * The drone keeps the heading it took off with and flies every leg with one "go x y z speed" in its body
+ * frame (x forward, y left, z up), climbing to the cruise height on the way. Legs longer than the SDK's 500 cm
+ * per axis are cut into equal pieces. With a mission pad at every station, detection is switched on once and
+ * every stop is a single "go 0 0 h speed m-N" over the pad, which also takes out whatever drift the leg left.
+ * That makes two commands per station instead of the six of turning, flying forward, pad detection on, the
+ * pad go, detection off and climbing.
+ *
+ * Positions are kept in whole centimetres as commanded, so rounding never adds up over the legs. Coordinates
+ * are in metres, with heading 0 along +y and clockwise positive, like the turns {@link Main} computes.
+ *
+ * The drone can also be made to face every leg, e.g. for the camera to look where it flies: it then turns
+ * with "cw" or "ccw" before the go, by whole degrees so that the heading it keeps track of stays exact. Those
+ * turns take time, which {@link FlightTimeModel} prices in for the planner.
+ */
+public class FlightPlanCompiler {
+
+    // Limits of the Tello SDK for go, in cm and cm/s
+    static final int MAX_DISTANCE = 500;
+    static final int MIN_DISTANCE = 20;
+    static final int MIN_SPEED = 10;
+    static final int MAX_SPEED = 100;
+
+    // Height of the drone right after take-off
+    static final int TAKEOFF_HEIGHT = 80;
+
+    // Speed of the go over a pad, slow enough for the pad to stay in view
+    static final int PAD_SPEED = 20;
+
+    private final int speed;
+    private final int cruiseHeight;
+    private final int stationHeight;
+    private final String pad;
+    private final boolean faceLegs;
+
+    // Like Main has always flown: cruise at 190 cm, stop 80 cm over the closest pad
+    public FlightPlanCompiler() {
+        this(50, 190, 80, "m-2");
+    }
+
+    public FlightPlanCompiler(int speed, int cruiseHeight, int stationHeight, String pad) {
+        this(speed, cruiseHeight, stationHeight, pad, false);
+    }
+
+    /**
+     * @param pad      mission pad to stop over, as the SDK names it in go: "m1" to "m8", or "m-2" for the closest
+     *                 one; null to stop on dead reckoning alone
+     * @param faceLegs whether the drone turns to face every leg before flying it
+     */
+    public FlightPlanCompiler(int speed, int cruiseHeight, int stationHeight, String pad, boolean faceLegs) {
+        if (speed < MIN_SPEED || speed > MAX_SPEED) {
+            throw new IllegalArgumentException("Speed must be between " + MIN_SPEED + " and " + MAX_SPEED + " cm/s, got " + speed);
+        }
+        this.speed = speed;
+        this.cruiseHeight = cruiseHeight;
+        this.stationHeight = stationHeight;
+        this.pad = pad;
+        this.faceLegs = faceLegs;
+    }
+
+    int getSpeed() {
+        return speed;
+    }
+
+    int getCruiseHeight() {
+        return cruiseHeight;
+    }
+
+    int getStationHeight() {
+        return stationHeight;
+    }
+
+    boolean stopsOverPads() {
+        return pad != null;
+    }
+
+    boolean facesLegs() {
+        return faceLegs;
+    }
+
+    // Flight along a closed path of station indices, starting on the ground at its first station
+    public List<String> compile(int[] path, Station[] stations) {
+        double[] wx = new double[path.length];
+        double[] wy = new double[path.length];
+        boolean[] isStation = new boolean[path.length];
+        for (int i = 0; i < path.length; i++) {
+            wx[i] = stations[path[i]].getX();
+            wy[i] = stations[path[i]].getY();
+            isStation[i] = true;
+        }
+        return compileWaypoints(wx, wy, isStation);
+    }
+
+    /**
+     * Flight along a closed path of station indices around the obstacles of the router, which must be over the
+     * same stations. The corners of every detour are only passed through.
+     */
+    public List<String> compile(int[] path, Station[] stations, ObstacleRouter router) {
+        Flight flight = new Flight(stations[path[0]].getX(), stations[path[0]].getY());
+        List<String> commands = new ArrayList<>(flight.takeOff());
+        for (int i = 1; i < path.length; i++) {
+            for (double[] corner : router.detour(path[i - 1], path[i])) {
+                commands.addAll(flight.flyTo(corner[0], corner[1], false));
+            }
+            commands.addAll(flight.flyTo(stations[path[i]].getX(), stations[path[i]].getY(), true));
+        }
+        commands.addAll(flight.land());
+        return commands;
+    }
+
+    /**
+     * Flight through the waypoints, in metres, starting on the ground at the first one and landing at the last.
+     * The drone stops over every waypoint marked as a station and only passes through the others.
+     */
+    public List<String> compileWaypoints(double[] wx, double[] wy, boolean[] isStation) {
+        Flight flight = new Flight(wx[0], wy[0]);
+        List<String> commands = new ArrayList<>(flight.takeOff());
+        for (int i = 1; i < wx.length; i++) {
+            commands.addAll(flight.flyTo(wx[i], wy[i], isStation[i]));
+        }
+        commands.addAll(flight.land());
+        return commands;
+    }
+
+    /**
+     * Where one drone is and the commands that take it on from there, one leg at a time.
+     */
+    final class Flight {
+        // Commanded position in cm and the heading in degrees, which only changes when the drone faces its legs
+        private int x;
+        private int y;
+        private int z;
+        private double heading;
+
+        Flight(double startX, double startY) {
+            this(startX, startY, 0.0);
+        }
+
+        Flight(double startX, double startY, double heading) {
+            this.x = centimetres(startX);
+            this.y = centimetres(startY);
+            this.heading = heading;
+        }
+
+        List<String> takeOff() {
+            z = TAKEOFF_HEIGHT;
+            List<String> commands = new ArrayList<>();
+            commands.add("takeoff");
+            if (pad != null) {
+                commands.add("mon");
+            }
+            return commands;
+        }
+
+        // Straight to the waypoint in as few go commands as the SDK allows, then stopping over it if it is a station
+        List<String> flyTo(double toX, double toY, boolean station) {
+            List<String> commands = new ArrayList<>();
+            int dX = centimetres(toX) - x;
+            int dY = centimetres(toY) - y;
+            int dZ = cruiseHeight - z;
+            if (faceLegs && Math.max(Math.abs(dX), Math.abs(dY)) > MIN_DISTANCE) {
+                turnTowards(commands, dX, dY);
+            }
+            int bodyX = bodyX(dX, dY);
+            int bodyY = bodyY(dX, dY);
+
+            if (Math.max(Math.abs(bodyX), Math.max(Math.abs(bodyY), Math.abs(dZ))) <= MIN_DISTANCE) {
+                // Too short for go; the pad takes it out at a station, otherwise it is made up on the next leg
+                if (station) {
+                    stop(commands, centimetres(toX), centimetres(toY));
+                }
+                return commands;
+            }
+
+            int pieces = (Math.max(Math.abs(bodyX), Math.max(Math.abs(bodyY), Math.abs(dZ))) + MAX_DISTANCE - 1) / MAX_DISTANCE;
+            for (int i = 0; i < pieces; i++) {
+                commands.add(go(share(bodyX, i, pieces), share(bodyY, i, pieces), share(dZ, i, pieces), speed));
+            }
+            x += dX;
+            y += dY;
+            z += dZ;
+
+            if (station) {
+                stop(commands, x, y);
+            }
+            return commands;
+        }
+
+        // Landing turns pad detection off as well
+        List<String> land() {
+            z = 0;
+            return List.of("land");
+        }
+
+        // Hovering over the station; over a pad the drone is exactly where it should be afterwards
+        private void stop(List<String> commands, int atX, int atY) {
+            int dZ = stationHeight - z;
+            if (pad != null) {
+                commands.add("go 0 0 " + stationHeight + " " + PAD_SPEED + " " + pad);
+                x = atX;
+                y = atY;
+                z = stationHeight;
+            } else if (Math.abs(dZ) >= MIN_DISTANCE) {
+                // Without a pad only the height changes, unless the change is too small for a move
+                commands.add(dZ > 0 ? "up " + dZ : "down " + -dZ);
+                z = stationHeight;
+            }
+        }
+
+        // Turns by the whole degrees that come closest to facing along the vector, if that is at least one
+        private void turnTowards(List<String> commands, int dX, int dY) {
+            long turn = Math.round(turnAngle(heading, bearing(dX, dY)));
+            if (turn > 0) {
+                commands.add("cw " + turn);
+            } else if (turn < 0) {
+                commands.add("ccw " + -turn);
+            }
+            heading = (heading + turn + 360) % 360;
+        }
+
+        private int bodyX(int dX, int dY) {
+            double radians = Math.toRadians(heading);
+            return (int) Math.round(dX * Math.sin(radians) + dY * Math.cos(radians));
+        }
+
+        private int bodyY(int dX, int dY) {
+            double radians = Math.toRadians(heading);
+            return (int) Math.round(-dX * Math.cos(radians) + dY * Math.sin(radians));
+        }
+
+        int[] getPosition() {
+            return new int[]{x, y, z};
+        }
+
+        double getHeading() {
+            return heading;
+        }
+    }
+
+    // Heading in degrees of a move along the vector, 0 along +y and clockwise positive
+    static double bearing(double dX, double dY) {
+        return (Math.toDegrees(Math.atan2(dX, dY)) + 360) % 360;
+    }
+
+    // Shortest turn from one heading to another, in degrees between -180 and 180, clockwise positive
+    static double turnAngle(double from, double to) {
+        double turn = (to - from) % 360;
+        if (turn > 180) {
+            turn -= 360;
+        } else if (turn <= -180) {
+            turn += 360;
+        }
+        return turn;
+    }
+
+    private static String go(int x, int y, int z, int speed) {
+        return "go " + x + " " + y + " " + z + " " + speed;
+    }
+
+    // Piece i of k of a distance, the pieces adding up to exactly the distance
+    private static int share(int distance, int i, int k) {
+        return (int) (Math.round((double) distance * (i + 1) / k) - Math.round((double) distance * i / k));
+    }
+
+    private static int centimetres(double metres) {
+        return (int) Math.round(metres * 100);
+    }
+}
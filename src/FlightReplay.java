@@ -0,0 +1,230 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a mission from its {@link FlightJournal}, to reproduce timing problems and to measure changes to the
+ * planner or the fleet against real traffic.
+ *
+ * The recorded stations are planned again by the {@link RoutePlanner}, on straight distances, and the tour is
+ * compared with the one that was flown. Then every recorded command is submitted again, through a
+ * {@link TelloFleet} to a {@link TelloSimulator} with one drone for every recorded one, at the time it was
+ * submitted in the recording. At a speed above 1 the commands come that much sooner and the simulated drones
+ * fly that much faster; the fleet's timeouts and backoffs are shortened the same way, and replayed times are
+ * multiplied back by the speed, so they compare with the recorded ones. Finally the round trips and latencies
+ * of both are printed side by side, with every command that ended differently than it did in the recording.
+ *
+ * The replay is journaled too when given a second journal, so that one replay can be compared with the next.
+ *
+ * Usage: java FlightReplay journal [speed] [replayJournal]
+ */
+public class FlightReplay {
+
+    // Shortest timeout of the replay, however fast it runs
+    private static final long MIN_TIMEOUT_MILLIS = 50;
+
+    // Differences listed one by one, the rest are only counted
+    private static final int LISTED = 10;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: java FlightReplay journal [speed] [replayJournal]");
+            return;
+        }
+        Path file = Path.of(args[0]);
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("The speed must be positive, got " + speed);
+        }
+
+        FlightJournal.Session session = FlightJournal.read(file);
+        summarize(file, session);
+        replan(session);
+
+        try (FlightJournal out = args.length > 2 ? FlightJournal.create(Path.of(args[2]), FlightJournal.DEFAULT_CAPACITY) : null) {
+            if (out != null && session.getStations() != null) {
+                Station[] stations = new Station[session.getStations()[0].length];
+                for (int i = 0; i < stations.length; i++) {
+                    stations[i] = new Station(session.getStations()[0][i], session.getStations()[1][i]);
+                }
+                out.mission(stations);
+                if (session.getPlan() != null) {
+                    out.plan(session.getPlan());
+                }
+            }
+            replay(session, speed, out);
+        }
+        AsyncLog.console().flush(1_000);
+    }
+
+    /* ----------------------------------- RECORDING ---------------------------------- */
+
+    private static void summarize(Path file, FlightJournal.Session session) {
+        int commands = 0;
+        int timeouts = 0;
+        int late = 0;
+        int states = 0;
+        double firstBattery = Double.NaN;
+        double lastBattery = Double.NaN;
+        long last = 0;
+        for (FlightJournal.Entry entry : session.getEntries()) {
+            last = Math.max(last, entry.getNanos());
+            switch (entry.getType()) {
+                case FlightJournal.SUBMITTED:
+                    commands++;
+                    break;
+                case FlightJournal.TIMED_OUT:
+                    timeouts++;
+                    break;
+                case FlightJournal.LATE:
+                    late++;
+                    break;
+                case FlightJournal.STATE:
+                    states++;
+                    double battery = entry.getValues()[TelloState.BAT];
+                    if (!Double.isNaN(battery)) {
+                        firstBattery = Double.isNaN(firstBattery) ? battery : firstBattery;
+                        lastBattery = battery;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        System.out.printf("%s: %d drones, %d commands over %.1f s, %d timeouts, %d late replies, %d states%n",
+                file, session.getDrones().size(), commands, last / 1e9, timeouts, late, states);
+        if (!Double.isNaN(firstBattery)) {
+            System.out.printf("battery from %.0f%% down to %.0f%%%n", firstBattery, lastBattery);
+        }
+        if (!session.isComplete() || session.getDropped() > 0 || session.getTorn() > 0) {
+            System.out.printf("the journal is %s, %d records were dropped and %d never finished%n",
+                    session.isComplete() ? "complete" : "not closed", session.getDropped(), session.getTorn());
+        }
+    }
+
+    // Plans the recorded stations again and compares the tour with the flown one
+    private static void replan(FlightJournal.Session session) {
+        double[][] stations = session.getStations();
+        if (stations == null) {
+            return;
+        }
+        double[][] distances = DistanceMatrixBuilder.build(stations[0], stations[1]);
+        RoutePlan plan = new RoutePlanner(1000).plan(distances);
+        System.out.printf("planned again by %s in %.1f ms: %.2f m over %d stations", plan.getSolver(),
+                plan.getElapsedNanos() / 1e6, plan.getTour().getCost(), distances.length);
+        int[] flown = session.getPlan();
+        if (flown != null) {
+            System.out.printf(", the flown tour is %.2f m%n", Tour.costOf(flown, distances));
+        } else {
+            System.out.println();
+        }
+    }
+
+    /* ------------------------------------ REPLAY ------------------------------------ */
+
+    private static void replay(FlightJournal.Session session, double speed, FlightJournal out) throws Exception {
+        List<FlightJournal.Entry> submitted = new ArrayList<>();
+        for (FlightJournal.Entry entry : session.getEntries()) {
+            if (entry.getType() == FlightJournal.SUBMITTED && entry.getDrone() >= 0) {
+                submitted.add(entry);
+            }
+        }
+        if (submitted.isEmpty()) {
+            System.out.println("no commands to replay");
+            return;
+        }
+        submitted.sort(Comparator.comparingLong(FlightJournal.Entry::getNanos));
+        int drones = session.getDrones().size();
+
+        // What the recorded commands of every drone ended with, in the order they were submitted
+        List<List<FlightJournal.Entry>> recorded = new ArrayList<>(drones);
+        MetricsRegistry.Histogram recordedRoundTrips = new MetricsRegistry.Histogram();
+        MetricsRegistry.Histogram recordedLatencies = new MetricsRegistry.Histogram();
+        for (int drone = 0; drone < drones; drone++) {
+            List<FlightJournal.Entry> finished = session.of(FlightJournal.FINISHED, drone);
+            recorded.add(finished);
+            for (FlightJournal.Entry entry : finished) {
+                recordedLatencies.record(entry.getLatencyNanos());
+                if (entry.getRoundTripNanos() >= 0) {
+                    recordedRoundTrips.record(entry.getRoundTripNanos());
+                }
+            }
+        }
+
+        long timeoutMillis = Math.max(MIN_TIMEOUT_MILLIS, scaled(TelloFleet.DEFAULT_TIMEOUT_MILLIS, speed));
+        MetricsRegistry.Histogram roundTrips = new MetricsRegistry.Histogram();
+        MetricsRegistry.Histogram latencies = new MetricsRegistry.Histogram();
+        List<String> differences = new ArrayList<>();
+        int[] differing = new int[1];
+
+        System.out.printf("replaying at %.4gx against the simulator%n", speed);
+        try (TelloSimulator simulator = new TelloSimulator(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), drones,
+                0, 0, 0.0, 0.0, 1.0 / speed, 1);
+             TelloFleet fleet = new TelloFleet(0, timeoutMillis, TelloFleet.DEFAULT_MAX_ATTEMPTS,
+                     scaled(TelloFleet.DEFAULT_BACKOFF_MILLIS, speed), scaled(TelloFleet.DEFAULT_MAX_BACKOFF_MILLIS, speed))) {
+            fleet.record(out);
+            int[] next = new int[drones];
+            List<CompletableFuture<?>> running = new ArrayList<>(submitted.size());
+
+            long start = System.nanoTime();
+            for (FlightJournal.Entry entry : submitted) {
+                long due = start + (long) (entry.getNanos() / speed);
+                for (long wait; (wait = due - System.nanoTime()) > 0; ) {
+                    LockSupport.parkNanos(wait);
+                }
+
+                int drone = entry.getDrone();
+                int index = next[drone]++;
+                FlightJournal.Entry before = index < recorded.get(drone).size() ? recorded.get(drone).get(index) : null;
+                long submittedAt = System.nanoTime();
+                running.add(fleet.drone(simulator.getAddress(drone)).submit(entry.getText()).whenComplete((result, error) -> {
+                    if (error != null) {
+                        return;
+                    }
+                    latencies.record((long) ((System.nanoTime() - submittedAt) * speed));
+                    if (result.getRoundTripNanos() >= 0) {
+                        roundTrips.record((long) (result.getRoundTripNanos() * speed));
+                    }
+                    if (before == null || before.isOk() != result.isOk() || before.getAttempts() != result.getAttempts()) {
+                        synchronized (differences) {
+                            differing[0]++;
+                            if (differences.size() < LISTED) {
+                                differences.add(session.getDrones().get(drone) + " " + result + ", recorded "
+                                        + (before == null ? "unfinished" : (before.isOk() ? "ok" : "failed") + " after " + before.getAttempts()));
+                            }
+                        }
+                    }
+                }));
+            }
+            CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).exceptionally(error -> null).join();
+            System.out.printf("%d commands replayed in %.1f s, the recording took %.1f s%n", submitted.size(),
+                    (System.nanoTime() - start) / 1e9, submitted.get(submitted.size() - 1).getNanos() / 1e9);
+        }
+
+        System.out.printf("%-18s %10s %10s %10s %10s %10s%n", "", "p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)", "count");
+        print("recorded rtt", recordedRoundTrips);
+        print("replayed rtt", roundTrips);
+        print("recorded latency", recordedLatencies);
+        print("replayed latency", latencies);
+        synchronized (differences) {
+            System.out.printf("%d commands ended differently than recorded%n", differing[0]);
+            for (String difference : differences) {
+                System.out.println("  " + difference);
+            }
+        }
+    }
+
+    private static long scaled(long millis, double speed) {
+        return Math.max(1, (long) (millis / speed));
+    }
+
+    private static void print(String name, MetricsRegistry.Histogram histogram) {
+        System.out.printf("%-18s %10.1f %10.1f %10.1f %10.1f %10d%n", name, histogram.percentile(0.5) / 1e6, histogram.percentile(0.9) / 1e6,
+                histogram.percentile(0.99) / 1e6, histogram.getMax() / 1e6, histogram.getCount());
+    }
+}
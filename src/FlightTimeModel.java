@@ -0,0 +1,205 @@
+import java.util.List;
+
+/**
+ * What flying a leg costs in seconds rather than metres, for planning tours that take the least time and battery.
+ *
+ * A leg costs its flight at the compiler's speed, including the climb back to cruise height, an overhead for
+ * every command it takes (speeding up, braking and the reply), and the stop over the station it ends at. When
+ * the drone faces its legs it also has to turn before every leg, at its yaw rate. How far it turns depends on
+ * the leg it came in on, so the cost of a leg depends on the station before it as well, and a shorter tour
+ * with sharp turns may take longer than a longer smooth one. That is what {@link FlightTimeSolver} plans for.
+ *
+ * Around obstacles, a leg follows the detour of its {@link ObstacleRouter}: it is flown piece by piece, with a
+ * turn at every corner when the drone faces its legs, and the turn before it depends on the last piece of the
+ * leg before. Every leg is priced once when the model is made, so the solvers only look costs up.
+ *
+ * Rows are the stations of the mission, row 0 being the control station, where the drone takes off facing
+ * heading 0. The command overhead, the yaw rate and the battery drain are estimates for a Tello EDU.
+ */
+public class FlightTimeModel {
+
+    static final double DEFAULT_YAW_RATE = 90.0;
+    static final double DEFAULT_COMMAND_SECONDS = 1.0;
+
+    // A full battery lasts about 13 minutes of flight, hovering or not
+    static final double BATTERY_PERCENT_PER_SECOND = 100.0 / (13 * 60);
+
+    // Previous station of the first leg, which starts from the heading the drone took off with
+    static final int TAKE_OFF = -1;
+
+    // Longest move of one go, in metres
+    private static final double MAX_MOVE = FlightPlanCompiler.MAX_DISTANCE / 100.0;
+    private static final double MIN_MOVE = FlightPlanCompiler.MIN_DISTANCE / 100.0;
+
+    private final int n;
+    private final double yawRate;
+    private final double commandSeconds;
+
+    // Seconds of every leg without the turn before it, and the headings it starts and ends with (NaN if too short)
+    private final double[][] travel;
+    private final double[][] departure;
+    private final double[][] arrival;
+
+    /**
+     * @param speed   in m/s
+     * @param climb   height in m the drone climbs on every leg, from where it stops to where it cruises
+     * @param yawRate in degrees per second, 0 if the drone keeps its heading and never turns
+     */
+    FlightTimeModel(double[] xs, double[] ys, double speed, double climb, double yawRate, double commandSeconds, double stopSeconds) {
+        this(xs, ys, null, speed, climb, yawRate, commandSeconds, stopSeconds);
+    }
+
+    // Legs around the obstacles of the router, which must be over the same stations; straight legs without one
+    FlightTimeModel(double[] xs, double[] ys, ObstacleRouter router, double speed, double climb, double yawRate,
+                    double commandSeconds, double stopSeconds) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("Got " + xs.length + " x and " + ys.length + " y coordinates");
+        }
+        if (!(speed > 0) || yawRate < 0) {
+            throw new IllegalArgumentException("Speed must be positive and the yaw rate not negative, got " + speed + " and " + yawRate);
+        }
+        this.n = xs.length;
+        this.yawRate = yawRate;
+        this.commandSeconds = commandSeconds;
+        this.travel = new double[n][n];
+        this.departure = new double[n][n];
+        this.arrival = new double[n][n];
+
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                if (from == to) {
+                    departure[from][to] = Double.NaN;
+                    arrival[from][to] = Double.NaN;
+                    continue;
+                }
+                List<double[]> corners = router == null ? List.of() : router.detour(from, to);
+                double[] px = new double[corners.size() + 2];
+                double[] py = new double[corners.size() + 2];
+                px[0] = xs[from];
+                py[0] = ys[from];
+                for (int k = 0; k < corners.size(); k++) {
+                    px[k + 1] = corners.get(k)[0];
+                    py[k + 1] = corners.get(k)[1];
+                }
+                px[px.length - 1] = xs[to];
+                py[py.length - 1] = ys[to];
+                price(from, to, px, py, speed, climb, stopSeconds);
+            }
+        }
+    }
+
+    // The way the compiler flies over the stations: its speed and heights, turns only if it faces its legs
+    static FlightTimeModel of(FlightPlanCompiler compiler, Station[] stations) {
+        return of(compiler, stations, null);
+    }
+
+    // Like the compiler flies over the stations, around the obstacles of the router if there is one
+    static FlightTimeModel of(FlightPlanCompiler compiler, Station[] stations, ObstacleRouter router) {
+        double[] xs = new double[stations.length];
+        double[] ys = new double[stations.length];
+        for (int i = 0; i < stations.length; i++) {
+            xs[i] = stations[i].getX();
+            ys[i] = stations[i].getY();
+        }
+        double climb = Math.abs(compiler.getCruiseHeight() - compiler.getStationHeight()) / 100.0;
+        // A stop is one more command, down to the station height; over a pad at the slow pad speed
+        double descent = compiler.stopsOverPads() ? climb * 100.0 / FlightPlanCompiler.PAD_SPEED : climb * 100.0 / compiler.getSpeed();
+        return new FlightTimeModel(xs, ys, router, compiler.getSpeed() / 100.0, climb, compiler.facesLegs() ? DEFAULT_YAW_RATE : 0.0,
+                DEFAULT_COMMAND_SECONDS, descent + DEFAULT_COMMAND_SECONDS);
+    }
+
+    int size() {
+        return n;
+    }
+
+    boolean turns() {
+        return yawRate > 0;
+    }
+
+    /* ------------------------------------- COSTS ------------------------------------ */
+
+    // Seconds of the leg from one station to another, when the drone came to the first one from previous
+    double legSeconds(int previous, int from, int to) {
+        return turnSeconds(previous, from, to) + travel[from][to];
+    }
+
+    // Seconds from leaving one station to having stopped over the other, not counting the turn before the leg
+    double travelSeconds(int from, int to) {
+        return travel[from][to];
+    }
+
+    // Seconds of the turn before the leg from one station to another; none for a drone that keeps its heading
+    double turnSeconds(int previous, int from, int to) {
+        double heading = previous == TAKE_OFF || Double.isNaN(arrival[previous][from]) ? 0.0 : arrival[previous][from];
+        return turn(heading, departure[from][to]);
+    }
+
+    // Seconds of the closed tour
+    double seconds(int[] path) {
+        double seconds = 0.0;
+        int previous = TAKE_OFF;
+        for (int i = 0; i + 1 < path.length; i++) {
+            seconds += legSeconds(previous, path[i], path[i + 1]);
+            previous = path[i];
+        }
+        return seconds;
+    }
+
+    double batteryPercent(int[] path) {
+        return seconds(path) * BATTERY_PERCENT_PER_SECOND;
+    }
+
+    // Travel seconds of every leg: symmetric, and never more than a leg costs with its turn
+    double[][] travelMatrix() {
+        double[][] matrix = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            matrix[i] = travel[i].clone();
+        }
+        return matrix;
+    }
+
+    /**
+     * Prices the leg through the points: every piece in as few go commands as the SDK allows, the first one
+     * climbing to cruise height, a turn at every corner, and the stop at the end.
+     */
+    private void price(int from, int to, double[] px, double[] py, double speed, double climb, double stopSeconds) {
+        double seconds = stopSeconds;
+        double rise = climb;
+        double first = Double.NaN;
+        double last = Double.NaN;
+        for (int k = 0; k + 1 < px.length; k++) {
+            double dX = px[k + 1] - px[k];
+            double dY = py[k + 1] - py[k];
+            double horizontal = Math.sqrt(dX * dX + dY * dY);
+            if (Math.max(Math.max(Math.abs(dX), Math.abs(dY)), rise) <= MIN_MOVE) {
+                // Too short for go, the compiler makes it up on the next piece
+                continue;
+            }
+            double bearing = Math.max(Math.abs(dX), Math.abs(dY)) > MIN_MOVE ? FlightPlanCompiler.bearing(dX, dY) : Double.NaN;
+            if (!Double.isNaN(bearing)) {
+                if (Double.isNaN(first)) {
+                    first = bearing;
+                } else {
+                    seconds += turn(last, bearing);
+                }
+                last = bearing;
+            }
+            // Facing the piece the whole of it is along x, otherwise it is split over x and y
+            double longest = yawRate > 0 ? horizontal : Math.max(Math.abs(dX), Math.abs(dY));
+            seconds += Math.sqrt(horizontal * horizontal + rise * rise) / speed + Math.ceil(Math.max(longest, rise) / MAX_MOVE) * commandSeconds;
+            rise = 0;
+        }
+        travel[from][to] = seconds;
+        departure[from][to] = first;
+        arrival[from][to] = last;
+    }
+
+    // Seconds of turning from one heading to the other, if the drone turns at all and the turn is a whole degree
+    private double turn(double from, double to) {
+        if (yawRate == 0 || Double.isNaN(to)) {
+            return 0.0;
+        }
+        double turn = Math.abs(FlightPlanCompiler.turnAngle(from, to));
+        return turn < 0.5 ? 0.0 : turn / yawRate + commandSeconds;
+    }
+}
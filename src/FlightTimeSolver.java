@@ -0,0 +1,266 @@
+import java.util.Arrays;
+
+/**
+ * Tours of least flight time under a {@link FlightTimeModel}, where what a leg costs depends on the leg before it.
+ *
+ * Up to EXACT_LIMIT stations, Held-Karp with the station before the last one added to the state, over
+ * (visited stations, last station, station before it), gives the optimum in m^3 2^m steps for m stations
+ * besides the control station: some 7 million for 12. Larger missions start from the tour that is shortest in
+ * travel time alone, planned by the {@link RoutePlanner} in part of the budget, and improve it for the rest of
+ * the budget by reversing segments (2-opt) and moving segments of 1 to 3 stations in both orientations
+ * (Or-opt). A move is judged by the seconds of the legs it changes, turns included, which is why a reversal
+ * has to be priced as a whole even though a turn costs the same in both directions.
+ *
+ * Without turns the cost of a leg does not depend on the one before it, and the mission goes straight to the
+ * {@link RoutePlanner} over the travel times. With turns even two stations are planned here, since flying a
+ * tour the other way round turns differently.
+ */
+public class FlightTimeSolver {
+
+    // Largest mission solved exactly, 12 stations besides the control station
+    static final int EXACT_LIMIT = 13;
+
+    // Part of the budget for the tour the local search starts from
+    private static final double SEED_SHARE = 0.5;
+
+    private static final double EPSILON = 1e-9;
+
+    // Longest segment moved by Or-opt
+    private static final int SEGMENT = 3;
+
+    private final long budgetMillis;
+
+    public FlightTimeSolver(long budgetMillis) {
+        this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * Plans the tour in seconds. The lower bound is the optimum, or the best bound on the travel time alone,
+     * which turns can only add to.
+     */
+    RoutePlan plan(FlightTimeModel model) {
+        int n = model.size();
+        if (!model.turns() || n < 2) {
+            return new RoutePlanner(budgetMillis).plan(model.travelMatrix());
+        }
+
+        FlightEvents.Solve event = new FlightEvents.Solve();
+        event.begin();
+        long start = System.nanoTime();
+        RoutePlan plan;
+        long cells = 0;
+        if (n <= EXACT_LIMIT) {
+            Tour tour = exact(model);
+            plan = new RoutePlan(new Tour(tour.getPath(), model.seconds(tour.getPath())), tour.getCost(), getClass().getSimpleName(),
+                    System.nanoTime() - start);
+            cells = ((long) (n - 1) << (n - 1)) * n;
+        } else {
+            long deadline = start + budgetMillis * 1_000_000L;
+            RoutePlan seed = new RoutePlanner(Math.max(1, (long) (budgetMillis * SEED_SHARE))).plan(model.travelMatrix());
+            int[] path = localSearch(model, seed.getTour().getPath(), 1, deadline);
+            plan = new RoutePlan(new Tour(path, model.seconds(path)), seed.getLowerBound(), getClass().getSimpleName(),
+                    System.nanoTime() - start);
+        }
+        RoutePlanner.recordSolve(event, plan.getSolver(), n, plan.getTour().getCost(), plan.getLowerBound(), 0, 0, cells,
+                plan.getElapsedNanos());
+        return plan;
+    }
+
+    /**
+     * Improves a closed tour within the budget, keeping its first fixedPrefix positions (at least the depot)
+     * as they are, like {@link HeuristicSolver#improve} does for distances.
+     */
+    Tour improve(FlightTimeModel model, int[] closedTour, int fixedPrefix) {
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+        int[] path = localSearch(model, closedTour, Math.max(1, fixedPrefix), deadline);
+        return new Tour(path, model.seconds(path));
+    }
+
+    /* ------------------------------------- EXACT ------------------------------------ */
+
+    // Held-Karp over (subset, last, previous); rows 1..m are bits 0..m-1 of the subset, previous is a row
+    static Tour exact(FlightTimeModel model) {
+        int n = model.size();
+        int m = n - 1;
+        if (n > EXACT_LIMIT) {
+            throw new IllegalArgumentException("Exact flight time plans go up to " + EXACT_LIMIT + " stations, got " + n);
+        }
+
+        // Leg costs by previous row (n for take-off), from row and to row
+        double[] leg = new double[(n + 1) * n * n];
+        for (int previous = 0; previous <= n; previous++) {
+            for (int from = 0; from < n; from++) {
+                for (int to = 0; to < n; to++) {
+                    leg[(previous * n + from) * n + to] =
+                            model.legSeconds(previous == n ? FlightTimeModel.TAKE_OFF : previous, from, to);
+                }
+            }
+        }
+
+        double[] best = new double[(m << m) * n];
+        // Station before the previous one on the best way to every state, the row of the depot for the first leg
+        byte[] parent = new byte[best.length];
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        for (int last = 0; last < m; last++) {
+            best[state(1 << last, last, 0, m, n)] = leg[(n * n) * n + last + 1];
+        }
+
+        int full = (1 << m) - 1;
+        for (int mask = 1; mask < full; mask++) {
+            for (int last = 0; last < m; last++) {
+                if ((mask & 1 << last) == 0) {
+                    continue;
+                }
+                int base = state(mask, last, 0, m, n);
+                for (int previous = 0; previous < n; previous++) {
+                    double cost = best[base + previous];
+                    if (cost == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+                    int legs = (previous * n + last + 1) * n;
+                    for (int next = 0; next < m; next++) {
+                        if ((mask & 1 << next) != 0) {
+                            continue;
+                        }
+                        int to = state(mask | 1 << next, next, last + 1, m, n);
+                        double candidate = cost + leg[legs + next + 1];
+                        if (candidate < best[to]) {
+                            best[to] = candidate;
+                            parent[to] = (byte) previous;
+                        }
+                    }
+                }
+            }
+        }
+
+        // Back to the control station
+        double bestCost = Double.POSITIVE_INFINITY;
+        int bestLast = -1;
+        int bestPrevious = -1;
+        for (int last = 0; last < m; last++) {
+            for (int previous = 0; previous < n; previous++) {
+                double cost = best[state(full, last, previous, m, n)] + leg[(previous * n + last + 1) * n];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestLast = last;
+                    bestPrevious = previous;
+                }
+            }
+        }
+
+        // Walks back through the parents of the states
+        int[] path = new int[n + 1];
+        int mask = full;
+        int last = bestLast;
+        int previous = bestPrevious;
+        for (int position = m; position >= 1; position--) {
+            path[position] = last + 1;
+            int rest = mask & ~(1 << last);
+            if (rest == 0) {
+                break;
+            }
+            int before = parent[state(mask, last, previous, m, n)];
+            mask = rest;
+            last = previous - 1;
+            previous = before;
+        }
+        return new Tour(path, bestCost);
+    }
+
+    private static int state(int mask, int last, int previous, int m, int n) {
+        return (mask * m + last) * n + previous;
+    }
+
+    /* ---------------------------------- LOCAL SEARCH -------------------------------- */
+
+    // First improvement over 2-opt and Or-opt moves behind the fixed prefix, until none is left or time is up
+    private static int[] localSearch(FlightTimeModel model, int[] closedTour, int fixed, long deadline) {
+        int[] path = closedTour.clone();
+        int[] candidate = new int[path.length];
+        int last = path.length - 2;
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = fixed; i < last; i++) {
+                if (System.nanoTime() - deadline >= 0) {
+                    return path;
+                }
+                for (int j = i + 1; j <= last; j++) {
+                    System.arraycopy(path, 0, candidate, 0, path.length);
+                    reverse(candidate, i, j);
+                    if (better(model, candidate, path, i, j)) {
+                        int[] swap = path;
+                        path = candidate;
+                        candidate = swap;
+                        improved = true;
+                    }
+                }
+            }
+            for (int length = 1; length <= SEGMENT; length++) {
+                for (int i = fixed; i + length - 1 <= last; i++) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        return path;
+                    }
+                    for (int to = fixed; to + length - 1 <= last; to++) {
+                        if (to == i) {
+                            continue;
+                        }
+                        for (int reversed = 0; reversed < 2; reversed++) {
+                            move(path, candidate, i, length, to, reversed == 1);
+                            int lo = Math.min(i, to);
+                            int hi = Math.max(i, to) + length - 1;
+                            if (better(model, candidate, path, lo, hi)) {
+                                int[] swap = path;
+                                path = candidate;
+                                candidate = swap;
+                                improved = true;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return path;
+    }
+
+    // Whether the candidate, which differs from the path in positions lo to hi only, takes less time
+    private static boolean better(FlightTimeModel model, int[] candidate, int[] path, int lo, int hi) {
+        int first = Math.max(0, lo - 1);
+        int end = Math.min(path.length - 2, hi + 1);
+        return seconds(model, candidate, first, end) < seconds(model, path, first, end) - EPSILON;
+    }
+
+    // Seconds of the legs leaving positions first to end
+    private static double seconds(FlightTimeModel model, int[] path, int first, int end) {
+        double seconds = 0.0;
+        for (int k = first; k <= end; k++) {
+            seconds += model.legSeconds(k == 0 ? FlightTimeModel.TAKE_OFF : path[k - 1], path[k], path[k + 1]);
+        }
+        return seconds;
+    }
+
+    private static void reverse(int[] path, int i, int j) {
+        while (i < j) {
+            int swap = path[i];
+            path[i++] = path[j];
+            path[j--] = swap;
+        }
+    }
+
+    // The path with the segment of the given length at position i moved to start at position to, maybe reversed
+    private static void move(int[] path, int[] into, int i, int length, int to, boolean reversed) {
+        int k = 0;
+        int[] rest = into;
+        // Everything but the segment, in order, then the segment put back in at its new place
+        for (int p = 0; p < path.length; p++) {
+            if (p < i || p >= i + length) {
+                rest[k++] = path[p];
+            }
+        }
+        System.arraycopy(rest, to, rest, to + length, path.length - length - to);
+        for (int s = 0; s < length; s++) {
+            rest[to + s] = path[reversed ? i + length - 1 - s : i + s];
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Prints how the parallel Held-Karp solver scales from 1 thread up to N threads on a random layout,
+ * and checks every run against the sequential solver.
+ *
+ * Usage: java HeldKarpScalingReport [stations] [maxThreads] [seed]
+ */
+public class HeldKarpScalingReport {
+
+    public static void main(String[] args) {
+        int stations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+
+        double[][] distances = randomDistances(stations, seed);
+
+        long start = System.nanoTime();
+        Tour sequential = new HeldKarpSolver().solve(distances);
+        double sequentialMillis = (System.nanoTime() - start) / 1e6;
+
+        System.out.println("Stations: " + stations + ", cores available: " + Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-10s %12s %10s %10s%n", "threads", "time (ms)", "speedup", "identical");
+        System.out.printf("%-10s %12.1f %10s %10s%n", "sequential", sequentialMillis, "1.00", "-");
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(distances, threads, sequential, sequentialMillis);
+            if (threads < maxThreads && threads * 2 > maxThreads) {
+                run(distances, maxThreads, sequential, sequentialMillis);
+            }
+        }
+    }
+
+    private static void run(double[][] distances, int threads, Tour sequential, double sequentialMillis) {
+        long start = System.nanoTime();
+        Tour tour = new ParallelHeldKarpSolver(threads).solve(distances);
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        boolean identical = Double.doubleToLongBits(tour.getCost()) == Double.doubleToLongBits(sequential.getCost())
+                && Arrays.equals(tour.getPath(), sequential.getPath());
+        System.out.printf("%-10d %12.1f %10.2f %10s%n", threads, millis, sequentialMillis / millis, identical);
+    }
+
+    static double[][] randomDistances(int stations, long seed) {
+        Random random = new Random(seed);
+        double[] xs = new double[stations];
+        double[] ys = new double[stations];
+        for (int i = 0; i < stations; i++) {
+            xs[i] = random.nextDouble() * 10.0;
+            ys[i] = random.nextDouble() * 10.0;
+        }
+
+        double[][] distances = new double[stations][stations];
+        for (int i = 0; i < stations; i++) {
+            for (int j = 0; j < stations; j++) {
+                distances[i][j] = Math.sqrt((xs[i] - xs[j]) * (xs[i] - xs[j]) + (ys[i] - ys[j]) * (ys[i] - ys[j]));
+            }
+        }
+        return distances;
+    }
+}
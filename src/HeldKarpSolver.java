@@ -0,0 +1,158 @@
+/**
+ * Exact Held-Karp dynamic programming over subsets, O(n^2 * 2^n) time.
+ *
+ * The depot (row 0) is left out of the subsets, so station i (1..n-1) is bit i-1 of the mask.
+ * The cost table is a flat array indexed by mask * m + last, where m = n - 1 and last is the
+ * bit of the station the partial path ends in. The parent table keeps the bit of the station
+ * visited before "last" and is used to rebuild the tour once the table is filled.
+ */
+public class HeldKarpSolver implements TourSolver {
+
+    // Above this the tables no longer fit in a Java array
+    static final int MAX_STATIONS = 27;
+
+    @Override
+    public Tour solve(double[][] distances) {
+        int n = distances.length;
+        if (n <= 3) {
+            return trivialTour(distances);
+        }
+        checkSize(n);
+
+        return fill(distances).closeTour();
+    }
+
+    // The whole table, relaxed subset by subset in increasing order of the mask
+    static Table fill(double[][] distances) {
+        Table table = new Table(distances);
+        int full = (1 << table.m) - 1;
+        for (int mask = 1; mask <= full; mask++) {
+            table.relax(mask);
+        }
+        return table;
+    }
+
+    static void checkSize(int n) {
+        if (n > MAX_STATIONS) {
+            throw new IllegalArgumentException("Held-Karp supports at most " + MAX_STATIONS + " stations, got " + n);
+        }
+    }
+
+    // With three stations or less there are at most two tours, one the other reversed, which only differ in
+    // cost when the matrix is not symmetric
+    static Tour trivialTour(double[][] distances) {
+        int[] path = new int[distances.length + 1];
+        for (int i = 1; i < distances.length; i++) {
+            path[i] = i;
+        }
+        Tour forward = Tour.of(path, distances);
+        if (distances.length < 3) {
+            return forward;
+        }
+        Tour backward = Tour.of(new int[]{0, 2, 1, 0}, distances);
+        return backward.getCost() < forward.getCost() ? backward : forward;
+    }
+
+    /* ------------------------------- DP TABLE -------------------------------- */
+
+    static final class Table {
+        final int m;
+        final double[] cost;
+        final byte[] parent;
+
+        // fromDepot[j] = d(0, j), toDepot[j] = d(j, 0), into[j * m + k] = d(k, j) (all by bit)
+        final double[] fromDepot;
+        final double[] toDepot;
+        final double[] into;
+
+        Table(double[][] distances) {
+            m = distances.length - 1;
+            cost = new double[m << m];
+            parent = new byte[m << m];
+            fromDepot = new double[m];
+            toDepot = new double[m];
+            into = new double[m * m];
+
+            for (int j = 0; j < m; j++) {
+                fromDepot[j] = distances[0][j + 1];
+                toDepot[j] = distances[j + 1][0];
+                for (int k = 0; k < m; k++) {
+                    into[j * m + k] = distances[k + 1][j + 1];
+                }
+            }
+        }
+
+        /**
+         * Fills every cell of the given subset. Only reads cells of subsets with one bit less,
+         * so any order that finishes a cardinality layer before starting the next one is valid.
+         * Ties are broken by the lowest predecessor bit, which keeps every order bit-for-bit equal.
+         */
+        void relax(int mask) {
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int j = Integer.numberOfTrailingZeros(rest);
+                int cell = mask * m + j;
+                int previous = mask ^ (1 << j);
+
+                if (previous == 0) {
+                    cost[cell] = fromDepot[j];
+                    parent[cell] = -1;
+                    continue;
+                }
+
+                double best = Double.MAX_VALUE;
+                int bestK = -1;
+                int base = previous * m;
+                int row = j * m;
+                for (int others = previous; others != 0; others &= others - 1) {
+                    int k = Integer.numberOfTrailingZeros(others);
+                    double candidate = cost[base + k] + into[row + k];
+                    if (candidate < best) {
+                        best = candidate;
+                        bestK = k;
+                    }
+                }
+                cost[cell] = best;
+                parent[cell] = (byte) bestK;
+            }
+        }
+
+        Tour closeTour() {
+            return closeTour((1 << m) - 1);
+        }
+
+        /**
+         * Optimal tour over the depot and the stations of the mask only, once every subset of the mask is
+         * relaxed. A filled table holds the answer for every subset of its stations, not just for all of them.
+         */
+        Tour closeTour(int mask) {
+            double best = Double.MAX_VALUE;
+            int last = -1;
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int j = Integer.numberOfTrailingZeros(rest);
+                double candidate = cost[mask * m + j] + toDepot[j];
+                if (candidate < best) {
+                    best = candidate;
+                    last = j;
+                }
+            }
+            return new Tour(backtrack(mask, last), best);
+        }
+
+        // Cost and parent tables plus the distances by bit
+        long bytes() {
+            return (long) cost.length * (Double.BYTES + 1) + (long) (m + 2) * m * Double.BYTES;
+        }
+
+        // Walks the parent table from (mask, last) back to the depot
+        int[] backtrack(int mask, int last) {
+            int[] path = new int[Integer.bitCount(mask) + 2];
+            for (int i = path.length - 2; i > 0; i--) {
+                path[i] = last + 1;
+                int previous = parent[mask * m + last];
+                mask ^= 1 << last;
+                last = previous;
+            }
+            return path;
+        }
+    }
+}
@@ -0,0 +1,496 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Anytime heuristic for station sets that are too large for an exact solver.
+ *
+ * A nearest neighbour tour is improved with 2-opt and Or-opt moves (segments of 1 to 3 stations,
+ * both orientations), both restricted to the closest stations of every station. Stations whose
+ * surroundings changed are kept in a queue ("don't look bits"), so a pass only revisits what a move touched.
+ * Until the time budget runs out the best tour is then kicked with a random double bridge and
+ * locally optimised again, keeping the result only if it is shorter.
+ *
+ * The matrix need not be symmetric: every move is priced with the edges in the direction they are flown, and
+ * a move that reverses part of the tour also pays for flying that part the other way round.
+ */
+public class HeuristicSolver implements TourSolver {
+
+    static final int NEIGHBOURS = 10;
+
+    private static final double EPSILON = 1e-10;
+
+    private final long timeBudgetNanos;
+    private final boolean perturbation;
+    private final long seed;
+
+    public HeuristicSolver() {
+        this(50);
+    }
+
+    public HeuristicSolver(long timeBudgetMillis) {
+        this(timeBudgetMillis, true, 1L);
+    }
+
+    public HeuristicSolver(long timeBudgetMillis, boolean perturbation, long seed) {
+        this.timeBudgetNanos = timeBudgetMillis * 1_000_000L;
+        this.perturbation = perturbation;
+        this.seed = seed;
+    }
+
+    @Override
+    public Tour solve(double[][] distances) {
+        return improve(distances, nearestNeighbourTour(distances), 1);
+    }
+
+    /**
+     * Improves a closed tour, keeping its first fixedPrefix positions (at least the depot) as they are.
+     * The prefix is the part of the route that has already been flown.
+     */
+    public Tour improve(double[][] distances, int[] closedTour, int fixedPrefix) {
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        int n = distances.length;
+        if (n - Math.max(1, fixedPrefix) < 2) {
+            return Tour.of(closedTour.clone(), distances);
+        }
+
+        int[][] neighbours = neighbourLists(distances, NEIGHBOURS);
+        return run(new LocalSearch(distances, null, null, neighbours, closedTour, Math.max(1, fixedPrefix)), deadline);
+    }
+
+    /**
+     * Plans straight from coordinates (index 0 is the depot), without any distance matrix: candidate
+     * neighbours come from a k-d tree and distances are computed when needed. Costs are plain Euclidean.
+     */
+    public Tour solve(double[] xs, double[] ys) {
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        int n = xs.length;
+        int[][] neighbours = new KdTree(xs, ys).neighbourLists(NEIGHBOURS);
+        int[] tour = nearestNeighbourTour(xs, ys, neighbours);
+        if (n < 3) {
+            return new Tour(tour, new LocalSearch(null, xs, ys, neighbours, tour, 1).cost(tour));
+        }
+        return run(new LocalSearch(null, xs, ys, neighbours, tour, 1), deadline);
+    }
+
+    private Tour run(LocalSearch search, long deadline) {
+        search.optimize(deadline);
+        if (perturbation) {
+            search.iterate(deadline, new SplittableRandom(seed));
+        }
+        return new Tour(search.best, search.bestCost);
+    }
+
+    static int[] nearestNeighbourTour(double[][] distances) {
+        int n = distances.length;
+        int[] path = new int[n + 1];
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+
+        for (int i = 1; i < n; i++) {
+            int from = path[i - 1];
+            int next = -1;
+            for (int candidate = 1; candidate < n; candidate++) {
+                if (!visited[candidate] && (next < 0 || distances[from][candidate] < distances[from][next])) {
+                    next = candidate;
+                }
+            }
+            path[i] = next;
+            visited[next] = true;
+        }
+        return path;
+    }
+
+    // Nearest neighbour over candidate lists, scanning all stations only when every candidate is taken
+    static int[] nearestNeighbourTour(double[] xs, double[] ys, int[][] neighbours) {
+        int n = xs.length;
+        int[] path = new int[n + 1];
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+
+        int scanFrom = 1;
+        for (int i = 1; i < n; i++) {
+            int from = path[i - 1];
+            int next = -1;
+            for (int candidate : neighbours[from]) {
+                if (!visited[candidate]) {
+                    next = candidate;
+                    break;
+                }
+            }
+            if (next < 0) {
+                double best = Double.MAX_VALUE;
+                while (visited[scanFrom]) {
+                    scanFrom++;
+                }
+                for (int candidate = scanFrom; candidate < n; candidate++) {
+                    if (!visited[candidate]) {
+                        double dX = xs[candidate] - xs[from];
+                        double dY = ys[candidate] - ys[from];
+                        double squared = dX * dX + dY * dY;
+                        if (squared < best) {
+                            best = squared;
+                            next = candidate;
+                        }
+                    }
+                }
+            }
+            path[i] = next;
+            visited[next] = true;
+        }
+        return path;
+    }
+
+    // The k closest stations of every station, closest first
+    static int[][] neighbourLists(double[][] distances, int k) {
+        int n = distances.length;
+        k = Math.min(k, n - 1);
+        int[][] lists = new int[n][k];
+        double[] best = new double[k];
+
+        for (int i = 0; i < n; i++) {
+            int[] list = lists[i];
+            int size = 0;
+            for (int j = 0; j < n; j++) {
+                if (j == i) {
+                    continue;
+                }
+                double d = distances[i][j];
+                if (size == k && d >= best[k - 1]) {
+                    continue;
+                }
+                int at = size < k ? size++ : k - 1;
+                while (at > 0 && best[at - 1] > d) {
+                    best[at] = best[at - 1];
+                    list[at] = list[at - 1];
+                    at--;
+                }
+                best[at] = d;
+                list[at] = j;
+            }
+        }
+        return lists;
+    }
+
+    /* ----------------------------- LOCAL SEARCH ------------------------------ */
+
+    private static final class LocalSearch {
+        // Either a matrix or coordinates to compute distances from
+        final double[][] d;
+        final double[] xs;
+        final double[] ys;
+        final int n;
+        final int fixed;
+        final int[][] neighbours;
+        // Reversing part of the tour only changes the cost of its ends
+        final boolean symmetric;
+
+        // tour[n] is always the depot again, pos[] is the inverse of tour[0..n-1]
+        final int[] tour;
+        final int[] pos;
+        int[] best;
+        double bestCost;
+
+        // Queue of stations to look at again
+        final int[] queue;
+        final boolean[] queued;
+        int head;
+        int count;
+
+        final int[] segment = new int[3];
+
+        LocalSearch(double[][] distances, double[] xs, double[] ys, int[][] neighbours, int[] closedTour, int fixed) {
+            this.d = distances;
+            this.xs = xs;
+            this.ys = ys;
+            this.n = closedTour.length - 1;
+            this.fixed = fixed;
+            this.neighbours = neighbours;
+            this.symmetric = distances == null || symmetric(distances);
+            this.tour = closedTour.clone();
+            this.pos = new int[n];
+            this.queue = new int[n];
+            this.queued = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                pos[tour[i]] = i;
+            }
+            for (int i = fixed - 1; i < n; i++) {
+                push(tour[i]);
+            }
+        }
+
+        double dist(int a, int b) {
+            if (d != null) {
+                return d[a][b];
+            }
+            double dX = xs[b] - xs[a];
+            double dY = ys[b] - ys[a];
+            return Math.sqrt(dX * dX + dY * dY);
+        }
+
+        static boolean symmetric(double[][] distances) {
+            for (int i = 0; i < distances.length; i++) {
+                for (int j = i + 1; j < distances.length; j++) {
+                    if (Math.abs(distances[i][j] - distances[j][i]) > EPSILON) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // How much more tour[from, to] costs when it is flown the other way round
+        double reversal(int from, int to) {
+            if (symmetric) {
+                return 0.0;
+            }
+            double change = 0.0;
+            for (int k = from; k < to; k++) {
+                change += dist(tour[k + 1], tour[k]) - dist(tour[k], tour[k + 1]);
+            }
+            return change;
+        }
+
+        double cost(int[] path) {
+            double cost = 0.0;
+            for (int i = 0; i < n; i++) {
+                cost += dist(path[i], path[i + 1]);
+            }
+            return cost;
+        }
+
+        void push(int station) {
+            if (!queued[station]) {
+                queued[station] = true;
+                queue[(head + count++) % n] = station;
+            }
+        }
+
+        int pop() {
+            int station = queue[head];
+            head = (head + 1) % n;
+            count--;
+            queued[station] = false;
+            return station;
+        }
+
+        void optimize(long deadline) {
+            int steps = 0;
+            while (count > 0) {
+                if ((++steps & 255) == 0 && System.nanoTime() > deadline) {
+                    break;
+                }
+                int a = pop();
+                if (twoOpt(a) || orOpt(a)) {
+                    push(a);
+                }
+            }
+            double cost = cost(tour);
+            if (best == null || cost < bestCost - EPSILON) {
+                best = tour.clone();
+                bestCost = cost;
+            }
+        }
+
+        // Double bridge kicks from the best tour until the deadline
+        void iterate(long deadline, SplittableRandom random) {
+            int free = n - fixed;
+            if (free < 8) {
+                return;
+            }
+            while (System.nanoTime() < deadline) {
+                System.arraycopy(best, 0, tour, 0, n + 1);
+                for (int i = fixed; i < n; i++) {
+                    pos[tour[i]] = i;
+                }
+                doubleBridge(random);
+                optimize(deadline);
+            }
+        }
+
+        void doubleBridge(SplittableRandom random) {
+            int[] cuts = new int[3];
+            int free = n - fixed;
+            for (int i = 0; i < 3; i++) {
+                cuts[i] = fixed + 1 + random.nextInt(free - 1);
+            }
+            Arrays.sort(cuts);
+            if (cuts[0] == cuts[1] || cuts[1] == cuts[2]) {
+                return;
+            }
+
+            // A = [fixed, c0), B = [c0, c1), C = [c1, c2) swap places -> A C B
+            int[] moved = Arrays.copyOfRange(tour, cuts[0], cuts[2]);
+            int lengthB = cuts[1] - cuts[0];
+            int lengthC = cuts[2] - cuts[1];
+            System.arraycopy(moved, lengthB, tour, cuts[0], lengthC);
+            System.arraycopy(moved, 0, tour, cuts[0] + lengthC, lengthB);
+            for (int i = cuts[0]; i < cuts[2]; i++) {
+                pos[tour[i]] = i;
+            }
+            push(tour[fixed - 1]);
+            push(tour[cuts[0] - 1]);
+            push(tour[cuts[0]]);
+            push(tour[cuts[1] - 1]);
+            push(tour[cuts[1]]);
+            push(tour[cuts[2] - 1]);
+            if (cuts[2] < n) {
+                push(tour[cuts[2]]);
+            }
+        }
+
+        /* --------------------------------- 2-OPT --------------------------------- */
+
+        boolean twoOpt(int a) {
+            int i = pos[a];
+
+            // Replace (a, succ a) and (c, succ c) with (a, c) and (succ a, succ c)
+            if (i >= fixed - 1) {
+                int b = tour[i + 1];
+                double removed = dist(a, b);
+                for (int c : neighbours[a]) {
+                    double added = dist(a, c);
+                    if (added >= removed) {
+                        break;
+                    }
+                    int j = pos[c];
+                    if (j < fixed - 1 || j == i) {
+                        continue;
+                    }
+                    int e = tour[j + 1];
+                    // Either b..c is reversed to a -> c..b -> e, or e..a to c -> a..e -> b
+                    double gain = j > i
+                            ? removed + dist(c, e) - added - dist(b, e) - reversal(i + 1, j)
+                            : removed + dist(c, e) - dist(c, a) - dist(e, b) - reversal(j + 1, i);
+                    if (gain > EPSILON) {
+                        if (j > i) {
+                            reverse(i + 1, j);
+                        } else {
+                            reverse(j + 1, i);
+                        }
+                        push(b);
+                        push(c);
+                        push(e);
+                        return true;
+                    }
+                }
+            }
+
+            // Replace (pred a, a) and (pred c, c) with (a, c) and (pred a, pred c)
+            if (i >= fixed) {
+                int b = tour[i - 1];
+                double removed = dist(b, a);
+                for (int c : neighbours[a]) {
+                    double added = dist(a, c);
+                    if (added >= removed) {
+                        break;
+                    }
+                    int j = pos[c];
+                    if (j < fixed || j == i) {
+                        continue;
+                    }
+                    int e = tour[j - 1];
+                    // Either a..e is reversed to b -> e..a -> c, or c..b to e -> b..c -> a
+                    double gain = j > i
+                            ? removed + dist(e, c) - added - dist(b, e) - reversal(i, j - 1)
+                            : removed + dist(e, c) - dist(c, a) - dist(e, b) - reversal(j, i - 1);
+                    if (gain > EPSILON) {
+                        if (j > i) {
+                            reverse(i, j - 1);
+                        } else {
+                            reverse(j, i - 1);
+                        }
+                        push(b);
+                        push(c);
+                        push(e);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void reverse(int from, int to) {
+            while (from < to) {
+                int swap = tour[from];
+                tour[from] = tour[to];
+                tour[to] = swap;
+                pos[tour[from]] = from;
+                pos[tour[to]] = to;
+                from++;
+                to--;
+            }
+        }
+
+        /* --------------------------------- OR-OPT -------------------------------- */
+
+        // Moves a segment of 1 to 3 stations starting at a next to one of its neighbours
+        boolean orOpt(int a) {
+            int i = pos[a];
+            if (i < fixed) {
+                return false;
+            }
+            for (int length = 1; length <= 3 && i + length - 1 <= n - 1; length++) {
+                int first = tour[i];
+                int last = tour[i + length - 1];
+                int before = tour[i - 1];
+                int after = tour[i + length];
+                double gain = dist(before, first) + dist(last, after) - dist(before, after);
+                if (gain <= EPSILON) {
+                    continue;
+                }
+                if (insertSegment(i, length, first, last, gain, neighbours[first])
+                        || insertSegment(i, length, first, last, gain, neighbours[last])) {
+                    push(before);
+                    push(after);
+                    push(first);
+                    push(last);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean insertSegment(int i, int length, int first, int last, double gain, int[] candidates) {
+            for (int c : candidates) {
+                int j = pos[c];
+                if (j < fixed - 1 || (j >= i - 1 && j < i + length)) {
+                    continue;
+                }
+                int next = tour[j + 1];
+                double edge = dist(c, next);
+                double forward = dist(c, first) + dist(last, next) - edge;
+                double backward = dist(c, last) + dist(first, next) - edge + reversal(i, i + length - 1);
+                if (gain - Math.min(forward, backward) > EPSILON) {
+                    moveSegment(i, length, j, backward < forward);
+                    push(c);
+                    push(next);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Moves tour[i, i + length) between positions j and j + 1, optionally reversed
+        void moveSegment(int i, int length, int j, boolean reversed) {
+            for (int k = 0; k < length; k++) {
+                segment[k] = tour[reversed ? i + length - 1 - k : i + k];
+            }
+            int from;
+            int to;
+            if (j < i) {
+                System.arraycopy(tour, j + 1, tour, j + 1 + length, i - j - 1);
+                System.arraycopy(segment, 0, tour, j + 1, length);
+                from = j + 1;
+                to = i + length - 1;
+            } else {
+                System.arraycopy(tour, i + length, tour, i, j - i - length + 1);
+                System.arraycopy(segment, 0, tour, j - length + 1, length);
+                from = i;
+                to = j;
+            }
+            for (int k = from; k <= to; k++) {
+                pos[tour[k]] = k;
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the distance matrix and the tour of a running mission in memory and patches both when stations
+ * are added, removed or moved, instead of planning the whole mission again.
+ *
+ * Row 0 of the matrix is the control station. The part of the tour the drone has already flown (up to the
+ * last station passed to {@link #arrivedAt(Station)}) is never changed: new stations are put in the cheapest
+ * gap of the rest of the tour, and the rest is then repaired with 2-opt and Or-opt from the drone's position.
+ *
+ * Distances are rounded up like {@link DistanceMatrixBuilder} rounds them. The stations given to the planner
+ * are never changed; a moved station is replaced by a new one. {@link PlanningService} keeps one for every
+ * live mission.
+ */
+public class IncrementalPlanner {
+
+    // Time the local repair may take after every change
+    private static final long REPAIR_BUDGET_MILLIS = 2;
+
+    private final List<Station> stations;
+    private double[][] distances;
+    private int[] tour;
+
+    // Number of positions of the tour that are flown, the drone is at tour[flown - 1]
+    private int flown = 1;
+
+    private final HeuristicSolver repair = new HeuristicSolver(REPAIR_BUDGET_MILLIS, false, 1L);
+
+    public IncrementalPlanner(List<Station> stations, TourSolver solver) {
+        this.stations = new ArrayList<>(stations);
+        this.distances = new double[this.stations.size()][this.stations.size()];
+        for (int i = 0; i < this.stations.size(); i++) {
+            fillRow(i);
+        }
+        this.tour = solver.solve(distances).getPath();
+    }
+
+    /* --------------------------------- CHANGES -------------------------------- */
+
+    public void addStation(Station station) {
+        int n = stations.size();
+        stations.add(station);
+
+        double[][] grown = new double[n + 1][];
+        for (int i = 0; i < n; i++) {
+            grown[i] = new double[n + 1];
+            System.arraycopy(distances[i], 0, grown[i], 0, n);
+        }
+        grown[n] = new double[n + 1];
+        distances = grown;
+        fillRow(n);
+
+        tour = insert(tour, n);
+        repair();
+    }
+
+    public void removeStation(Station station) {
+        int row = rowOf(station);
+        if (row == 0) {
+            throw new IllegalArgumentException("The control station cannot be removed");
+        }
+        int position = positionOf(row);
+        if (position < flown) {
+            throw new IllegalStateException("Station " + row + " has already been visited");
+        }
+
+        int n = stations.size();
+        stations.remove(row);
+
+        double[][] shrunk = new double[n - 1][n - 1];
+        for (int i = 0, to = 0; i < n; i++) {
+            if (i == row) {
+                continue;
+            }
+            System.arraycopy(distances[i], 0, shrunk[to], 0, row);
+            System.arraycopy(distances[i], row + 1, shrunk[to], row, n - row - 1);
+            to++;
+        }
+        distances = shrunk;
+
+        int[] shrunkTour = new int[n];
+        for (int i = 0, to = 0; i <= n; i++) {
+            if (i == position) {
+                continue;
+            }
+            shrunkTour[to++] = tour[i] > row ? tour[i] - 1 : tour[i];
+        }
+        tour = shrunkTour;
+
+        repair();
+    }
+
+    // The station is replaced by one at the new position, which is returned; the given one is left as it was
+    public Station moveStation(Station station, double x, double y) {
+        int row = rowOf(station);
+        Station moved = new Station(x, y);
+        stations.set(row, moved);
+        fillRow(row);
+
+        int position = positionOf(row);
+        if (position >= flown) {
+            // Take it out and put it back where it now fits best
+            int[] without = new int[tour.length - 1];
+            System.arraycopy(tour, 0, without, 0, position);
+            System.arraycopy(tour, position + 1, without, position, tour.length - position - 1);
+            tour = insert(without, row);
+        }
+        repair();
+        return moved;
+    }
+
+    /**
+     * Marks the station the drone has reached (or is committed to fly to). If it is not the next stop of the
+     * planned tour, the drone went elsewhere and the rest of the tour is planned again from there.
+     */
+    public void arrivedAt(Station station) {
+        int row = rowOf(station);
+        int position = positionOf(row);
+        if (position < flown) {
+            return;
+        }
+        System.arraycopy(tour, flown, tour, flown + 1, position - flown);
+        tour[flown] = row;
+        flown++;
+        if (position != flown - 1) {
+            repair();
+        }
+    }
+
+    /* --------------------------------- QUERIES -------------------------------- */
+
+    public Tour getTour() {
+        return Tour.of(tour.clone(), distances);
+    }
+
+    // The stations in matrix order, the tour refers to this list
+    List<Station> getStations() {
+        return new ArrayList<>(stations);
+    }
+
+    Station getCurrentStation() {
+        return stations.get(tour[flown - 1]);
+    }
+
+    int getFlown() {
+        return flown;
+    }
+
+    /* --------------------------------- HELPERS -------------------------------- */
+
+    private void fillRow(int row) {
+        Station station = stations.get(row);
+        for (int i = 0; i < distances.length; i++) {
+            double distance = i == row ? 0.0 : DistanceMatrixBuilder.roundUp(station.distanceTo(stations.get(i)));
+            distances[row][i] = distance;
+            distances[i][row] = distance;
+        }
+    }
+
+    // Cheapest insertion of the station into the unflown part of a closed tour that does not contain it yet
+    private int[] insert(int[] path, int row) {
+        int best = flown - 1;
+        double bestCost = Double.MAX_VALUE;
+        for (int p = flown - 1; p < path.length - 1; p++) {
+            int a = path[p];
+            int b = path[p + 1];
+            double cost = distances[a][row] + distances[row][b] - distances[a][b];
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = p;
+            }
+        }
+
+        int[] inserted = new int[path.length + 1];
+        System.arraycopy(path, 0, inserted, 0, best + 1);
+        inserted[best + 1] = row;
+        System.arraycopy(path, best + 1, inserted, best + 2, path.length - best - 1);
+        return inserted;
+    }
+
+    private void repair() {
+        tour = repair.improve(distances, tour, flown).getPath();
+    }
+
+    private int rowOf(Station station) {
+        for (int i = 0; i < stations.size(); i++) {
+            if (stations.get(i) == station) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown station");
+    }
+
+    private int positionOf(int row) {
+        for (int i = 0; i < tour.length - 1; i++) {
+            if (tour[i] == row) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Station " + row + " is not on the tour");
+    }
+}
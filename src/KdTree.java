@@ -0,0 +1,157 @@
+/**
+ * Two-dimensional k-d tree over station coordinates, used to find the closest stations of every station
+ * without a full distance matrix.
+ *
+ * The tree is implicit: the station indices are permuted so that the median of every range [lo, hi) sits at
+ * its middle, split by x on even depths and by y on odd ones.
+ */
+final class KdTree {
+
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] index;
+
+    KdTree(double[] xs, double[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+        this.index = new int[xs.length];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = i;
+        }
+        build(0, index.length, 0);
+    }
+
+    /**
+     * The k closest other stations of every station, closest first. Same shape as
+     * {@link HeuristicSolver#neighbourLists(double[][], int)}, in O(n k log n) instead of O(n^2).
+     */
+    int[][] neighbourLists(int k) {
+        int n = xs.length;
+        k = Math.min(k, n - 1);
+        int[][] lists = new int[n][];
+        Query query = new Query(k);
+        for (int i = 0; i < n; i++) {
+            lists[i] = query.run(i);
+        }
+        return lists;
+    }
+
+    /* --------------------------------- BUILD --------------------------------- */
+
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, (depth & 1) == 0 ? xs : ys);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    // Quickselect: puts the k-th smallest of index[lo..hi] by the given axis at k
+    private void select(int lo, int hi, int k, double[] axis) {
+        while (hi > lo) {
+            double pivot = axis[index[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (axis[index[i]] < pivot) {
+                    i++;
+                }
+                while (axis[index[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = index[i];
+                    index[i] = index[j];
+                    index[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /* --------------------------------- QUERY --------------------------------- */
+
+    // Reusable k-nearest search; the best candidates are kept sorted by squared distance
+    private final class Query {
+        private final int k;
+        private final int[] found;
+        private final double[] squared;
+        private int size;
+        private int station;
+        private double x;
+        private double y;
+
+        Query(int k) {
+            this.k = k;
+            this.found = new int[k];
+            this.squared = new double[k];
+        }
+
+        int[] run(int station) {
+            this.station = station;
+            this.x = xs[station];
+            this.y = ys[station];
+            this.size = 0;
+            if (k > 0) {
+                search(0, index.length, 0);
+            }
+            int[] result = new int[size];
+            System.arraycopy(found, 0, result, 0, size);
+            return result;
+        }
+
+        private double worst() {
+            return size < k ? Double.MAX_VALUE : squared[k - 1];
+        }
+
+        private void search(int lo, int hi, int depth) {
+            if (hi <= lo) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            int candidate = index[mid];
+            if (candidate != station) {
+                double dX = xs[candidate] - x;
+                double dY = ys[candidate] - y;
+                offer(candidate, dX * dX + dY * dY);
+            }
+
+            double split = (depth & 1) == 0 ? xs[candidate] - x : ys[candidate] - y;
+            if (split > 0) {
+                search(lo, mid, depth + 1);
+                if (split * split < worst()) {
+                    search(mid + 1, hi, depth + 1);
+                }
+            } else {
+                search(mid + 1, hi, depth + 1);
+                if (split * split < worst()) {
+                    search(lo, mid, depth + 1);
+                }
+            }
+        }
+
+        private void offer(int candidate, double distance) {
+            if (distance >= worst()) {
+                return;
+            }
+            int at = size < k ? size++ : k - 1;
+            while (at > 0 && squared[at - 1] > distance) {
+                squared[at] = squared[at - 1];
+                found[at] = found[at - 1];
+                at--;
+            }
+            squared[at] = distance;
+            found[at] = candidate;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * Lower bounds on the length of the shortest tour, used to report how far a tour may be from optimal.
+ */
+final class LowerBounds {
+
+    private LowerBounds() {
+    }
+
+    /**
+     * Minimum 1-tree: a spanning tree over the stations 1..n-1 plus the two cheapest edges of the depot.
+     * Every tour is a 1-tree, so its weight can never be more than the tour length.
+     */
+    static double oneTree(double[][] distances) {
+        int n = distances.length;
+        if (n < 3) {
+            return HeldKarpSolver.trivialTour(distances).getCost();
+        }
+        return new OneTree(distances).weigh(new double[n]);
+    }
+
+    /**
+     * Held-Karp bound: the 1-tree bound raised by subgradient optimisation of node penalties.
+     * upperBound is the length of any known tour and only steers the step size.
+     */
+    static double heldKarp(double[][] distances, double upperBound, int iterations) {
+        int n = distances.length;
+        if (n < 3) {
+            return HeldKarpSolver.trivialTour(distances).getCost();
+        }
+
+        OneTree tree = new OneTree(distances);
+        double[] penalties = new double[n];
+        double best = tree.weigh(penalties);
+        double lambda = 2.0;
+        int sinceImprovement = 0;
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            double squares = 0.0;
+            for (int i = 0; i < n; i++) {
+                int v = tree.degree[i] - 2;
+                squares += v * v;
+            }
+            // Every station has degree two: the 1-tree is a tour and the bound is exact
+            if (squares == 0) {
+                break;
+            }
+
+            double step = lambda * (upperBound - best) / squares;
+            if (step <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                penalties[i] += step * (tree.degree[i] - 2);
+            }
+
+            double bound = tree.weigh(penalties);
+            if (bound > best + 1e-12) {
+                best = bound;
+                sinceImprovement = 0;
+            } else if (++sinceImprovement >= 5) {
+                lambda /= 2.0;
+                sinceImprovement = 0;
+            }
+        }
+        return Math.min(best, upperBound);
+    }
+
+    /* -------------------------------- 1-TREE --------------------------------- */
+
+    private static final class OneTree {
+        final double[][] d;
+        final int n;
+        final int[] degree;
+        final double[] key;
+        final int[] parent;
+        final boolean[] inTree;
+
+        OneTree(double[][] distances) {
+            this.d = distances;
+            this.n = distances.length;
+            this.degree = new int[n];
+            this.key = new double[n];
+            this.parent = new int[n];
+            this.inTree = new boolean[n];
+        }
+
+        // Undirected weight with penalties; the cheaper direction keeps the bound valid for asymmetric matrices
+        double weight(int i, int j, double[] penalties) {
+            return Math.min(d[i][j], d[j][i]) + penalties[i] + penalties[j];
+        }
+
+        // Weight of the minimum 1-tree under the given penalties, minus twice their sum (Prim, O(n^2))
+        double weigh(double[] penalties) {
+            Arrays.fill(degree, 0);
+            Arrays.fill(inTree, false);
+            Arrays.fill(key, Double.MAX_VALUE);
+
+            double total = 0.0;
+            key[1] = 0.0;
+            parent[1] = -1;
+            for (int added = 1; added < n; added++) {
+                int u = -1;
+                for (int v = 1; v < n; v++) {
+                    if (!inTree[v] && (u < 0 || key[v] < key[u])) {
+                        u = v;
+                    }
+                }
+                inTree[u] = true;
+                if (parent[u] >= 0) {
+                    total += key[u];
+                    degree[u]++;
+                    degree[parent[u]]++;
+                }
+                for (int v = 1; v < n; v++) {
+                    if (!inTree[v]) {
+                        double w = weight(u, v, penalties);
+                        if (w < key[v]) {
+                            key[v] = w;
+                            parent[v] = u;
+                        }
+                    }
+                }
+            }
+
+            // The two cheapest edges of the depot close the 1-tree
+            int first = -1;
+            int second = -1;
+            for (int v = 1; v < n; v++) {
+                double w = weight(0, v, penalties);
+                if (first < 0 || w < weight(0, first, penalties)) {
+                    second = first;
+                    first = v;
+                } else if (second < 0 || w < weight(0, second, penalties)) {
+                    second = v;
+                }
+            }
+            total += weight(0, first, penalties) + weight(0, second, penalties);
+            degree[0] = 2;
+            degree[first]++;
+            degree[second]++;
+
+            double penaltySum = 0.0;
+            for (double penalty : penalties) {
+                penaltySum += penalty;
+            }
+            return total - 2.0 * penaltySum;
+        }
+    }
+}
@@ -1,20 +1,16 @@
 import java.io.*;
 import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Scanner;
 
 import static java.lang.Math.abs;
 
 public class Main {
 
-    /* ----------------------------- GLOBAL VARIABLES ------------------------------ */
-    private static double[][] distances;
-    private static double optimalDistance = Integer.MAX_VALUE;
-    private static String optimalPath = "";
-
-
     /* ------------------------------ MAIN FUNCTION -------------------------------- */
 
     public static void main(String args[]) throws Exception {
@@ -23,48 +19,114 @@ public class Main {
 
         Scanner in = new Scanner(System.in);
 
-        Station[] stations = createStations();
+        // The stations come from a catalogue when one is given, e.g. -Ddrone.stations=stations/lab.stations
+        String stationsFile = System.getProperty("drone.stations");
+        Station[] stations = stationsFile != null ? StationCatalogue.load(Path.of(stationsFile)).getStations() : createStations();
 
         System.out.println("How many stations do you want to visit?");
         int numberOfStations = in.nextInt();
 
 
         ArrayList<Integer> stationsToVisit = takeStationsToVisit(numberOfStations, stations);
+        Station[] missionStations = new Station[stationsToVisit.size()];
+        for (int i = 0; i < missionStations.length; i++) {
+            missionStations[i] = stations[stationsToVisit.get(i)];
+        }
 
-        numberOfStations += 1;
+        // Legs go round obstacles when there is a map of them, e.g. -Ddrone.obstacles=stations/lab.obstacles
+        String obstaclesFile = System.getProperty("drone.obstacles");
+        ObstacleMap obstacles = obstaclesFile == null ? null : ObstacleMap.load(Path.of(obstaclesFile), ObstacleMap.DEFAULT_CLEARANCE);
+        ObstacleRouter router = obstacles == null ? null : new ObstacleRouter(missionStations, obstacles);
+
+        // The matrix is only kept in a file when asked for, e.g. -Ddrone.matrixFile=DistancesMatrix.bin, and read back
+        // instead of built when it was written for the same stations and obstacles; the router has worked it out already
+        String matrixFile = System.getProperty("drone.matrixFile");
+        int fingerprint = DistanceMatrixFile.fingerprint(missionStations, obstacles);
+        double[][] distances = router == null && matrixFile != null ? readMatrix(Path.of(matrixFile), fingerprint, missionStations.length) : null;
+        boolean matrixRead = distances != null;
+        if (distances == null) {
+            distances = router != null ? router.getDistances() : DistanceMatrixBuilder.build(stationsToVisit, stations);
+        }
+        if (matrixFile != null && !matrixRead) {
+            DistanceMatrixFile.write(Path.of(matrixFile), distances, false, true, fingerprint);
+        }
 
-        double[][] matrix = createMatrixWithDistances(stationsToVisit, stations, numberOfStations);
-        createFileWithDistances(matrix, numberOfStations);
+        // How the mission would be split over a fleet is only shown, e.g. -Ddrone.fleet=3 -Ddrone.maxRouteLength=8
+        String fleet = System.getProperty("drone.fleet");
+        if (fleet != null) {
+            double maxRouteLength = Double.parseDouble(System.getProperty("drone.maxRouteLength", String.valueOf(Double.MAX_VALUE)));
+            System.out.println(new FleetPlanner(Integer.parseInt(fleet), maxRouteLength, 1000).plan(stationsToVisit, stations));
+        }
 
-        fillMatrixDistances(numberOfStations);
+        /* ------------------------------- ALGORITHM ------------------------------- */
 
-        /* ------------------------- ALGORITHM INITIALIZATION ----------------------- */
-        int size = numberOfStations;
+        // The drone only turns to face every leg when asked to, e.g. -Ddrone.faceLegs=true
+        FlightPlanCompiler compiler = new FlightPlanCompiler(50, 190, 80, "m-2", Boolean.getBoolean("drone.faceLegs"));
+        FlightTimeModel timeModel = FlightTimeModel.of(compiler, missionStations, router);
 
-        // Initial variables to start the algorithm
-        String path = "";
-        int[] vertices = new int[size - 1];
+        // The mission is only journaled for replay when asked for, e.g. -Ddrone.journal=mission.journal
+        String journalFile = System.getProperty("drone.journal");
 
-        // Filling the initial vertices array with the proper values
-        for (int i = 1; i < size; i++) {
-            vertices[i - 1] = i;
-        }
+        // The drone takes off while the tour of least flight time is still being planned and improved
+        try (FlightJournal journal = journalFile == null ? null : FlightJournal.create(Path.of(journalFile), FlightJournal.DEFAULT_CAPACITY);
+             FlightPipeline pipeline = new FlightPipeline(compiler, missionStations, distances, 1000).timed(timeModel)) {
+            if (journal != null) {
+                journal.mission(missionStations);
+            }
+            if (router != null) {
+                pipeline.avoiding(router);
+            }
 
-        // FIRST CALL TO THE RECURSIVE FUNCTION
-        procedure(0, vertices, path, 0.0);
+            // The commands are only written out when asked for, e.g. -Ddrone.commandsFile=DroneCommands.txt
+            String commandsFile = System.getProperty("drone.commandsFile");
+            if (commandsFile != null) {
+                pipeline.tap(Path.of(commandsFile));
+            }
+            pipeline.start();
 
-        System.out.println("Path referring to the matrix: " + optimalPath);
+            controlDrone(pipeline, journal);
 
-        int[] pathReferToStations = takePathReferToStations(optimalPath, stationsToVisit, numberOfStations);
+            RoutePlan plan = pipeline.awaitPlan();
+            Tour optimalTour = plan.getTour();
+            if (journal != null) {
+                journal.plan(optimalTour.getPath());
+            }
 
-        System.out.println();
+            System.out.println("Planned by " + plan.getSolver() + ", at most " + String.format("%.2f", plan.getGap() * 100) + "% above the optimum");
 
-        String[] anglesArray = createArrayOfAngles(pathReferToStations, stations);
+            System.out.println("Path referring to the matrix: " + Arrays.toString(optimalTour.getPath()));
+            System.out.println(String.format("Estimated flight: %.0f s, %.0f%% of the battery, %.2f m",
+                    timeModel.seconds(optimalTour.getPath()), timeModel.batteryPercent(optimalTour.getPath()),
+                    Tour.costOf(optimalTour.getPath(), distances)));
 
-        printWriteTrip(pathReferToStations, stations, anglesArray);
+            int[] pathReferToStations = takePathReferToStations(optimalTour.getPath(), stationsToVisit);
 
-        controlDrone(numberOfStations);
+            System.out.println();
+
+            String[] anglesArray = createArrayOfAngles(pathReferToStations, stations);
+
+            printTrip(pathReferToStations, stations, anglesArray);
+        }
+
+        // Solve, matrix and command timings are only written out when asked for, e.g. -Ddrone.metrics=metrics.txt
+        String metricsFile = System.getProperty("drone.metrics");
+        if (metricsFile != null) {
+            MetricsRegistry.global().dump(Path.of(metricsFile));
+        }
+        AsyncLog.console().flush(1_000);
+    }
 
+    // The matrix in the file, or null when there is none or it was written for other stations or obstacles
+    private static double[][] readMatrix(Path file, int fingerprint, int stations) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        if (DistanceMatrixFile.fingerprint(file) != fingerprint) {
+            System.out.println(file + " was written for other stations or obstacles, the matrix is built again");
+            return null;
+        }
+        double[][] matrix = DistanceMatrixFile.read(file);
+        return matrix.length == stations ? matrix : null;
     }
 
     private static Station[] createStations() {
@@ -113,93 +175,21 @@ public class Main {
         return distance;
     }
 
-    private static double[][] createMatrixWithDistances(ArrayList<Integer> stationsToVisit, Station[] stations, int numberOfStations) {
-
-        double[][] matrix = new double[numberOfStations][numberOfStations];
-
-        DecimalFormat df = new DecimalFormat("#.###");
-        df.setRoundingMode(RoundingMode.CEILING);
-
-        for (int i = 0; i < numberOfStations; i++) {
-            for (int j = 0; j < numberOfStations; j++) {
-                if (i == j) {
-                    matrix[i][j] = 0.0;
-                } else {
-                    matrix[i][j] = Double.parseDouble(df.format(calculateDistance(stations[stationsToVisit.get(i)].getX(), stations[stationsToVisit.get(i)].getY(), stations[stationsToVisit.get(j)].getX(), stations[stationsToVisit.get(j)].getY())));
-                }
-            }
-        }
-
-        return matrix;
-    }
-
-    private static void createFileWithDistances(double[][] matrix, int numberOfStations) throws IOException {
-
-        PrintWriter writer = new PrintWriter("DistancesMatrix.txt", StandardCharsets.UTF_8);
-
-        for (int i = 0; i < numberOfStations; i++) {
-            for (int j = 0; j < numberOfStations; j++) {
-                writer.print(matrix[i][j] + " ");
-            }
-            writer.println("  ");
-        }
-        writer.close();
-    }
-
-    private static void fillMatrixDistances(int numberOfStations) throws IOException {
-
-        int size = numberOfStations;
-
-        // Distances array is initiated considering the size of the matrix
-        distances = new double[size][size];
+    private static int[] takePathReferToStations(int[] pathReferToMatrix, ArrayList<Integer> stationsToVisit) {
 
-        // The file in that location is opened
-        FileReader f = new FileReader("DistancesMatrix.txt");
-        BufferedReader b = new BufferedReader(f);
-
-        // Our matrix is filled with the values of the file matrix
-        for (int row = 0; row < size; row++) {
-
-            // Every value of each row is read and stored
-            String line = b.readLine();
-            String[] values = line.trim().split("\\s+");
-
-            for (int col = 0; col < size; col++) {
-                distances[row][col] = Double.parseDouble(values[col]);
-            }
-        }
-        // Closing file
-        b.close();
-    }
-
-    private static int[] takePathReferToStations(String optimalPath, ArrayList<Integer> stationsToVisit, int numberOfStations) {
-        // Creating array of string length
-        int[] PathReferToMatrix = new int[optimalPath.length()];
-
-        // Copy character by character into array
-        for (int i = 0; i < optimalPath.length(); i++) {
-            char d = optimalPath.charAt(i);
-            PathReferToMatrix[i] = Integer.parseInt(String.valueOf(d));
-        }
-
-        String FinalPAth = "";
-        for (int i = 0; i < optimalPath.length(); i++) {
-            FinalPAth = FinalPAth + stationsToVisit.get(PathReferToMatrix[i]);
-        }
-
-        System.out.println("Final path referring to actual stations: " + FinalPAth);
-
-        int[] pathArr = new int[numberOfStations + 1];
+        int[] pathArr = new int[pathReferToMatrix.length];
 
         for (int i = 0; i < pathArr.length; i++) {
-            pathArr[i] = stationsToVisit.get(PathReferToMatrix[i]);
+            pathArr[i] = stationsToVisit.get(pathReferToMatrix[i]);
         }
 
+        System.out.println("Final path referring to actual stations: " + Arrays.toString(pathArr));
+
         return pathArr;
 
     }
 
-    private static String[] createArrayOfAngles(int[] pathArr, Station[] stations) {
+    static String[] createArrayOfAngles(int[] pathArr, Station[] stations) {
 
         String[] anglesArray = new String[pathArr.length];
 
@@ -215,9 +205,8 @@ public class Main {
         return anglesArray;
     }
 
-    private static void printWriteTrip(int[] pathArr, Station[] stations, String[] anglesArray) throws IOException {
+    private static void printTrip(int[] pathArr, Station[] stations, String[] anglesArray) {
 
-        PrintWriter commandsWriter = new PrintWriter("DroneCommands.txt", StandardCharsets.UTF_8);
         DecimalFormat df = new DecimalFormat("#.###");
         df.setRoundingMode(RoundingMode.CEILING);
 
@@ -230,8 +219,6 @@ public class Main {
                 double dis = calculateDistance(stations[pathArr[i]].getX(), stations[pathArr[i]].getY(), stations[pathArr[0]].getX(), stations[pathArr[0]].getY()) * 100;
                 int di = (int) dis;
                 System.out.print("Turn " + getDifferenceInAngles(anglesArray, i));
-                commandsWriter.println(getDifferenceInAngles(anglesArray, i));
-                commandsWriter.println("forward " + di);
                 System.out.println(" and fly " + di + " cm");
 
             } else {
@@ -242,62 +229,48 @@ public class Main {
 
                 if (i == 0) {
                     System.out.print("Turn " + takeAngle(stations, pathArr[i], pathArr[i + 1]));
-                    commandsWriter.println(takeAngle(stations, pathArr[i], pathArr[i + 1]));
                 } else {
                     System.out.print("Turn " + getDifferenceInAngles(anglesArray, i));
-                    commandsWriter.println(getDifferenceInAngles(anglesArray, i));
                 }
-                commandsWriter.println("forward " + di);
                 System.out.print(" and fly " + di + " cm");
             }
             System.out.println();
         }
-        commandsWriter.close();
     }
 
-    private static void controlDrone(int numberOfStations) throws IOException {
-
-        TelloDrone drone = new TelloDrone();
-        drone.connect();
-
-        int CommandLength = (numberOfStations) * 2;
-        int counter = 1;
+    private static void controlDrone(FlightPipeline pipeline, FlightJournal journal) throws IOException {
 
-        try (BufferedReader bufCommands = new BufferedReader(new FileReader("DroneCommands.txt"))) {
-            String line;
-            drone.sendCommand("takeoff");
+        // Every command is retried by the channel itself, with a timeout and a backoff between attempts
+        try (TelloCommandChannel drone = new TelloCommandChannel();
+             TelloTelemetry telemetry = new TelloTelemetry()) {
+            drone.record(journal);
+            telemetry.record(journal);
 
-            while (!drone.sendCommand("up 110")) {
-                drone.sendCommand("up 110");
+            if (!drone.connect()) {
+                System.out.println("Cannot connect to the drone");
+                return;
             }
 
-            while ((line = bufCommands.readLine()) != null) {
-
-                while (!drone.sendCommand(line)) {
-                    drone.sendCommand(line);
+            // The plan takes off, stops over every pad and lands by itself
+            for (CommandResult result : pipeline.fly(drone::send)) {
+                if (!result.isOk() && !result.getCommand().equals("land")) {
+                    System.out.println("Giving up after " + result);
+                    break;
                 }
+            }
 
-                if (counter % 2 == 0) { // check if the drone rotates!!!
-                    drone.sendCommand("mon");
-                    while (!drone.sendCommand("go 0 0 80 20 m-2")) {
-                        drone.sendCommand("go 0 0 80 20 m-2");
-                    }
-                    drone.sendCommand("moff");
-
-                    if (counter != CommandLength) {
-                        while (!drone.sendCommand("up 110")) {
-                            drone.sendCommand("up 110");
-                        }
-                    }
+            System.out.println("First command sent " + pipeline.getFirstCommandNanos() / 1_000_000 + " ms after planning started");
+            System.out.println("Drone link: " + drone.getStats());
 
-                }
-                counter++;
+            // The drone has streamed its state since it was connected
+            TelloState state = new TelloState();
+            if (telemetry.ring(drone.getDrone()).latest(state)) {
+                System.out.println("Last state: battery " + state.getBattery() + "%, height " + state.getHeight() + " cm");
             }
-            drone.sendCommand("land");
         }
     }
 
-    private static String takeAngle(Station[] stations, int from, int to) {
+    static String takeAngle(Station[] stations, int from, int to) {
 
         double angle = 0.0;
         String dir = "";
@@ -361,7 +334,7 @@ public class Main {
         return dir + angle;
     }
 
-    private static String getDifferenceInAngles(String[] anglesArray, int iter) {
+    static String getDifferenceInAngles(String[] anglesArray, int iter) {
 
         String newAngle = "";
 
@@ -399,76 +372,4 @@ public class Main {
         }
         return newAngle;
     }
-
-    /* ------------------------------- RECURSIVE FUNCTION ---------------------------- */
-    /* Author: Sinclert Perez (UC3M)
-     * https://github.com/Sinclert/Heuristics-TSP/blob/master/HK_Optimal.java
-     */
-
-    private static double procedure(int initial, int vertices[], String path, double costUntilHere) {
-
-        // We concatenate the current path and the vertex taken as initial
-        // path = path + Integer.toString(initial) + " - ";
-        path += Integer.toString(initial);
-        int length = vertices.length;
-        double newCostUntilHere;
-
-        // Exit case, if there are no more options to evaluate (last node)
-        if (length == 0) {
-            newCostUntilHere = costUntilHere + distances[initial][0];
-
-            // If its cost is lower than the stored one
-            if (newCostUntilHere < optimalDistance) {
-                optimalDistance = newCostUntilHere;
-                optimalPath = path + "0";
-            }
-
-            return (distances[initial][0]);
-        }
-
-        // If the current branch has higher cost than the stored one: stop traversing
-        else if (costUntilHere > optimalDistance) {
-            return 0;
-        }
-        // Common case, when there are several nodes in the list
-        else {
-
-            int[][] newVertices = new int[length][(length - 1)];
-            double costCurrentNode, costChild;
-            double bestCost = Double.MAX_VALUE;
-
-            // For each of the nodes of the list
-            for (int i = 0; i < length; i++) {
-                // Each recursion new vertices list is constructed
-                for (int j = 0, k = 0; j < length; j++, k++) {
-
-                    // The current child is not stored in the new vertices array
-                    if (j == i) {
-                        k--;
-                        continue;
-                    }
-                    newVertices[i][k] = vertices[j];
-                }
-
-                // Cost of arriving the current node from its parent
-                costCurrentNode = distances[initial][vertices[i]];
-
-                // Here the cost to be passed to the recursive function is computed
-                newCostUntilHere = costCurrentNode + costUntilHere;
-
-                // RECURSIVE CALLS TO THE FUNCTION IN ORDER TO COMPUTE THE COSTS
-                costChild = procedure(vertices[i], newVertices[i], path, newCostUntilHere);
-
-                // The cost of every child + the current node cost is computed
-                double totalCost = costChild + costCurrentNode;
-
-                // Finally we select from the minimum from all possible children costs
-                if (totalCost < bestCost) {
-                    bestCost = totalCost;
-                }
-            }
-            return (bestCost);
-        }
-    }
 }
-
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Named counters and latency histograms, cheap enough to update on every command and every solve.
+ *
+ * Recording takes a few atomic adds and nothing is allocated once a metric exists, so callers look a metric
+ * up once and keep it. {@link #dump()} writes everything in the Prometheus text format, which is also readable
+ * as it is: the planning service serves it at /metrics, and Main writes it to the file given with
+ * -Ddrone.metrics=file at the end of a flight.
+ *
+ * Names are dotted, e.g. "command.rtt"; histograms hold nanoseconds and are exported in seconds.
+ */
+final class MetricsRegistry {
+
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    // The registry the planner and flight control record into
+    static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    AtomicLong counter(String name) {
+        return counters.computeIfAbsent(name, key -> new AtomicLong());
+    }
+
+    Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, AtomicLong> counter : new TreeMap<>(counters).entrySet()) {
+            String name = exportName(counter.getKey()) + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(counter.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            String name = exportName(entry.getKey()) + "_seconds";
+            Histogram histogram = entry.getValue();
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(histogram.percentile(quantile))).append('\n');
+            }
+            out.append(name).append("_max ").append(seconds(histogram.getMax())).append('\n');
+            out.append(name).append("_sum ").append(seconds(histogram.getSum())).append('\n');
+            out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    // Writes the dump to a file at once, so a scraper never reads half of it
+    void dump(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temporary, dump(), StandardCharsets.UTF_8);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String exportName(String name) {
+        return "drone_" + name.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    /* ---------------------------------- HISTOGRAM ----------------------------------- */
+
+    /**
+     * Log-linear histogram of non-negative values: every power of two is split into eight buckets, so a
+     * percentile is off by at most an eighth of its value, over the whole range of a long.
+     */
+    static final class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets.incrementAndGet(bucket(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long seen;
+            while (value > (seen = max.get()) && !max.compareAndSet(seen, value)) {
+                // Another thread raised it in between, try again against its value
+            }
+        }
+
+        // Smallest recorded value that at least the given share of all values is at or below, within a bucket
+        long percentile(double quantile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int bucket = 0; bucket < buckets.length(); bucket++) {
+                seen += buckets.get(bucket);
+                if (seen >= rank) {
+                    return Math.min(upperBound(bucket), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        long getSum() {
+            return sum.get();
+        }
+
+        long getMax() {
+            return max.get();
+        }
+
+        double getMean() {
+            long total = count.get();
+            return total == 0 ? 0.0 : (double) sum.get() / total;
+        }
+
+        // Values below SUB_BUCKETS get a bucket each, above that the top four bits pick the bucket
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        // Largest value that falls into the bucket
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return lower + (1L << shift) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d, mean %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms", getCount(),
+                    getMean() / 1e6, percentile(0.5) / 1e6, percentile(0.99) / 1e6, getMax() / 1e6);
+        }
+    }
+}
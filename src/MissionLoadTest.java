@@ -0,0 +1,169 @@
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Flies many missions at the same time against the {@link TelloSimulator}, all through one {@link TelloFleet},
+ * and prints how long the missions took, the round trip times of the commands and how often they were retried.
+ * Meanwhile every drone streams its state at 10 Hz into one {@link TelloTelemetry}, which reports what it
+ * received and how much its thread allocated for it.
+ *
+ * Every mission visits a few random stations with the plan {@link FlightPlanCompiler} makes for them, like
+ * {@link Main} flies them. With the same arguments the missions and the simulated losses are the same from run to run.
+ *
+ * Usage: java MissionLoadTest [missions] [latencyMillis] [jitterMillis] [lossRate] [timeScale] [seed]
+ */
+public class MissionLoadTest {
+
+    // Stations per mission besides the depot, and the side of the square they lie in, in metres
+    private static final int STATIONS = 6;
+    private static final double AREA = 4.0;
+
+    // A Tello streams its state about ten times a second
+    private static final long STATE_PERIOD_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int missions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 5;
+        long jitter = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        double loss = args.length > 3 ? Double.parseDouble(args[3]) : 0.02;
+        double timeScale = args.length > 4 ? Double.parseDouble(args[4]) : 0.01;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42L;
+
+        List<List<String>> commands = new ArrayList<>(missions);
+        Random random = new Random(seed);
+        for (int i = 0; i < missions; i++) {
+            commands.add(mission(random));
+        }
+
+        // Long enough for the longest move, 5 m at the default speed
+        long timeoutMillis = Math.max(250, (long) (500 / TelloSimulator.DEFAULT_SPEED * 1000 * timeScale) + 2 * (latency + jitter) + 50);
+
+        try (TelloSimulator simulator = new TelloSimulator(new InetSocketAddress("127.0.0.1", 0), missions, latency, jitter, loss, 0.0, timeScale, seed);
+             TelloFleet fleet = new TelloFleet(0, timeoutMillis, 5, 20, 500);
+             TelloTelemetry telemetry = new TelloTelemetry(0, 256)) {
+
+            // The rings are made up front, so that only what the states themselves cost is counted
+            for (InetSocketAddress address : simulator.getAddresses()) {
+                telemetry.ring(address);
+            }
+            long allocatedBefore = allocatedBytes(telemetry.getThread());
+            simulator.streamState(telemetry.getLocalAddress().getPort(), STATE_PERIOD_MILLIS);
+
+            List<TelloFleet.Drone> drones = new ArrayList<>(missions);
+            for (InetSocketAddress address : simulator.getAddresses()) {
+                drones.add(fleet.drone(address));
+            }
+
+            long[] durations = new long[missions];
+            List<CompletableFuture<List<CommandResult>>> running = new ArrayList<>(missions);
+            long start = System.nanoTime();
+            for (int i = 0; i < missions; i++) {
+                int mission = i;
+                long started = System.nanoTime();
+                running.add(drones.get(i).runMission(commands.get(i))
+                        .whenComplete((results, error) -> durations[mission] = System.nanoTime() - started));
+            }
+            CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).join();
+            long wall = System.nanoTime() - start;
+
+            report(commands, running, durations, drones, wall);
+            System.out.printf("simulator: %d datagrams in, %d dropped, %d replies out, %d states out%n",
+                    simulator.received.get(), simulator.dropped.get(), simulator.sent.get(), simulator.states.get());
+            reportTelemetry(telemetry, simulator.getAddresses(), allocatedBytes(telemetry.getThread()) - allocatedBefore);
+        }
+    }
+
+    static List<String> mission(Random random) {
+        Station[] stations = new Station[STATIONS + 1];
+        double[] xs = new double[STATIONS + 1];
+        double[] ys = new double[STATIONS + 1];
+        for (int i = 0; i <= STATIONS; i++) {
+            xs[i] = i == 0 ? AREA / 2 : random.nextDouble() * AREA;
+            ys[i] = i == 0 ? AREA / 2 : random.nextDouble() * AREA;
+            stations[i] = new Station(xs[i], ys[i]);
+        }
+        int[] path = new HeuristicSolver(1, false, 1).solve(DistanceMatrixBuilder.build(xs, ys)).getPath();
+
+        List<String> commands = new ArrayList<>();
+        commands.add("command");
+        commands.addAll(new FlightPlanCompiler().compile(path, stations));
+        return commands;
+    }
+
+    private static void report(List<List<String>> commands, List<CompletableFuture<List<CommandResult>>> running, long[] durations,
+                               List<TelloFleet.Drone> drones, long wall) {
+        int completed = 0;
+        List<Long> roundTrips = new ArrayList<>();
+        long attempts = 0;
+        for (int i = 0; i < running.size(); i++) {
+            List<CommandResult> results = running.get(i).join();
+            boolean ok = results.size() == commands.get(i).size();
+            for (CommandResult result : results) {
+                ok &= result.isOk();
+                attempts += result.getAttempts();
+                if (result.getRoundTripNanos() >= 0) {
+                    roundTrips.add(result.getRoundTripNanos());
+                }
+            }
+            if (ok) {
+                completed++;
+            }
+        }
+
+        long retries = 0;
+        long timeouts = 0;
+        long late = 0;
+        for (TelloFleet.Drone drone : drones) {
+            retries += drone.getStats().getRetries();
+            timeouts += drone.getStats().getTimeouts();
+            late += drone.getStats().getLateReplies();
+        }
+
+        long[] missionNanos = durations.clone();
+        long[] rttNanos = roundTrips.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(missionNanos);
+        Arrays.sort(rttNanos);
+
+        System.out.printf("%d missions in %.0f ms, %d completed, %d aborted%n", running.size(), wall / 1e6, completed, running.size() - completed);
+        System.out.printf("%-16s %10s %10s %10s %10s %10s%n", "", "p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)", "count");
+        System.out.printf("%-16s %10.1f %10.1f %10.1f %10.1f %10d%n", "mission", percentile(missionNanos, 0.5), percentile(missionNanos, 0.9),
+                percentile(missionNanos, 0.99), percentile(missionNanos, 1.0), missionNanos.length);
+        System.out.printf("%-16s %10.1f %10.1f %10.1f %10.1f %10d%n", "command rtt", percentile(rttNanos, 0.5), percentile(rttNanos, 0.9),
+                percentile(rttNanos, 0.99), percentile(rttNanos, 1.0), rttNanos.length);
+        System.out.printf("attempts %d, retries %d, timeouts %d, late replies %d%n", attempts, retries, timeouts, late);
+    }
+
+    private static void reportTelemetry(TelloTelemetry telemetry, List<InetSocketAddress> drones, long allocated) {
+        TelloState state = new TelloState();
+        long states = 0;
+        int lowestBattery = 100;
+        for (InetSocketAddress drone : drones) {
+            TelemetryRing ring = telemetry.ring(drone);
+            states += ring.getPublished();
+            if (ring.latest(state)) {
+                lowestBattery = Math.min(lowestBattery, state.getBattery());
+            }
+        }
+        System.out.printf("telemetry: %d states from %d drones, %d malformed, lowest battery %d%%, %d bytes allocated (%.1f per state)%n",
+                states, telemetry.getDrones().size(), telemetry.malformed.get(), lowestBattery, allocated,
+                states == 0 ? 0.0 : (double) allocated / states);
+    }
+
+    private static long allocatedBytes(Thread thread) {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(thread.getId());
+    }
+
+    // Nearest-rank percentile of sorted nanoseconds, in milliseconds
+    private static double percentile(long[] sorted, double q) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,322 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The obstacles of the flying area, e.g. racks and pillars, as polygons in metres seen from above.
+ *
+ * In a file, every line is one obstacle given by its corners, "x1 y1 x2 y2 x3 y3 ...", going round it either
+ * way; empty lines and lines starting with # are skipped. Every obstacle is grown by the clearance the drone
+ * keeps from it: its edges are moved outwards and its corners are where the moved edges meet, which is exact
+ * for convex obstacles. Paths may run along the grown edges and through their corners, never inside.
+ *
+ * Obstacles keep their id when others are removed. The map is not synchronized: it is edited from one thread,
+ * while nothing reads it.
+ */
+final class ObstacleMap {
+
+    static final String EXTENSION = ".obstacles";
+
+    // Room kept around every obstacle: half the width of a Tello with its guards, and some drift
+    static final double DEFAULT_CLEARANCE = 0.3;
+
+    // Points closer than this to an edge count as on it
+    private static final double EPSILON = 1e-7;
+
+    private final double clearance;
+    private final List<Obstacle> obstacles = new ArrayList<>();
+
+    ObstacleMap(double clearance) {
+        if (clearance < 0) {
+            throw new IllegalArgumentException("The clearance cannot be negative, got " + clearance);
+        }
+        this.clearance = clearance;
+    }
+
+    static ObstacleMap load(Path file, double clearance) throws IOException {
+        return parse(file.getFileName().toString(), Files.readAllLines(file, StandardCharsets.UTF_8), clearance);
+    }
+
+    static ObstacleMap parse(String source, List<String> lines, double clearance) {
+        ObstacleMap map = new ObstacleMap(clearance);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("[\\s,]+");
+            if (fields.length < 6 || fields.length % 2 != 0) {
+                throw new IllegalArgumentException(source + ", line " + (i + 1) + ": expected at least three corners \"x y\", got \"" + line + "\"");
+            }
+            double[] xs = new double[fields.length / 2];
+            double[] ys = new double[fields.length / 2];
+            try {
+                for (int k = 0; k < xs.length; k++) {
+                    xs[k] = Double.parseDouble(fields[2 * k]);
+                    ys[k] = Double.parseDouble(fields[2 * k + 1]);
+                }
+                map.add(xs, ys);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(source + ", line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return map;
+    }
+
+    // Adds the obstacle with the given corners, before growing it, and returns its id
+    int add(double[] xs, double[] ys) {
+        Obstacle obstacle = new Obstacle(obstacles.size(), xs, ys, clearance);
+        obstacles.add(obstacle);
+        return obstacle.id;
+    }
+
+    // The removed obstacle, null if there was none with the id
+    Obstacle remove(int id) {
+        if (id < 0 || id >= obstacles.size()) {
+            return null;
+        }
+        return obstacles.set(id, null);
+    }
+
+    Obstacle get(int id) {
+        return id < 0 || id >= obstacles.size() ? null : obstacles.get(id);
+    }
+
+    List<Obstacle> getObstacles() {
+        List<Obstacle> live = new ArrayList<>();
+        for (Obstacle obstacle : obstacles) {
+            if (obstacle != null) {
+                live.add(obstacle);
+            }
+        }
+        return live;
+    }
+
+    double getClearance() {
+        return clearance;
+    }
+
+    /* ----------------------------------- GEOMETRY ----------------------------------- */
+
+    // Whether flying straight from a to b would take the drone into an obstacle
+    boolean blocked(double ax, double ay, double bx, double by) {
+        for (Obstacle obstacle : obstacles) {
+            if (obstacle != null && obstacle.blocks(ax, ay, bx, by)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether the point is inside an obstacle, not counting its edges
+    boolean inside(double x, double y) {
+        for (Obstacle obstacle : obstacles) {
+            if (obstacle != null && obstacle.contains(x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One obstacle, grown by the clearance, with its corners counter-clockwise.
+     */
+    static final class Obstacle {
+        final int id;
+        final double[] xs;
+        final double[] ys;
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+
+        Obstacle(int id, double[] xs, double[] ys, double clearance) {
+            if (xs.length != ys.length || xs.length < 3) {
+                throw new IllegalArgumentException("An obstacle needs at least three corners, got " + Math.min(xs.length, ys.length));
+            }
+            double area = signedArea(xs, ys);
+            if (Math.abs(area) < EPSILON) {
+                throw new IllegalArgumentException("The obstacle has no area");
+            }
+            int n = xs.length;
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                int from = area > 0 ? i : n - 1 - i;
+                x[i] = xs[from];
+                y[i] = ys[from];
+            }
+            this.id = id;
+            this.xs = new double[n];
+            this.ys = new double[n];
+            grow(x, y, clearance, this.xs, this.ys);
+
+            double lowX = Double.MAX_VALUE;
+            double lowY = Double.MAX_VALUE;
+            double highX = -Double.MAX_VALUE;
+            double highY = -Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                lowX = Math.min(lowX, this.xs[i]);
+                lowY = Math.min(lowY, this.ys[i]);
+                highX = Math.max(highX, this.xs[i]);
+                highY = Math.max(highY, this.ys[i]);
+            }
+            this.minX = lowX;
+            this.minY = lowY;
+            this.maxX = highX;
+            this.maxY = highY;
+        }
+
+        int corners() {
+            return xs.length;
+        }
+
+        /**
+         * Whether the segment goes through the inside. It may touch corners and run along edges: the segment is
+         * cut where it crosses or touches the boundary, and it is blocked if it crosses an edge or if a piece
+         * between two such points lies inside, like a diagonal between two corners does.
+         */
+        boolean blocks(double ax, double ay, double bx, double by) {
+            if (Math.max(ax, bx) <= minX + EPSILON || Math.min(ax, bx) >= maxX - EPSILON
+                    || Math.max(ay, by) <= minY + EPSILON || Math.min(ay, by) >= maxY - EPSILON) {
+                return false;
+            }
+            double dx = bx - ax;
+            double dy = by - ay;
+            double length = Math.sqrt(dx * dx + dy * dy);
+            if (length < EPSILON) {
+                return contains(ax, ay);
+            }
+
+            // Without corners on it, a segment that crosses no edge is either inside or outside as a whole
+            int n = xs.length;
+            int touching = 0;
+            for (int i = 0; i < n; i++) {
+                int j = (i + 1) % n;
+                double ex = xs[j] - xs[i];
+                double ey = ys[j] - ys[i];
+                double denominator = dx * ey - dy * ex;
+                if (Math.abs(denominator) > EPSILON * length) {
+                    double t = ((xs[i] - ax) * ey - (ys[i] - ay) * ex) / denominator;
+                    double u = ((xs[i] - ax) * dy - (ys[i] - ay) * dx) / denominator;
+                    double edge = Math.sqrt(ex * ex + ey * ey);
+                    if (t * length > EPSILON && (1 - t) * length > EPSILON && u * edge > EPSILON && (1 - u) * edge > EPSILON) {
+                        return true;
+                    }
+                }
+                if (cut(i, ax, ay, dx, dy, length) >= 0) {
+                    touching++;
+                }
+            }
+            if (touching == 0) {
+                return contains(ax + dx / 2, ay + dy / 2);
+            }
+
+            double[] cuts = new double[touching + 2];
+            int count = 0;
+            cuts[count++] = 0.0;
+            cuts[count++] = 1.0;
+            for (int i = 0; i < n; i++) {
+                double t = cut(i, ax, ay, dx, dy, length);
+                if (t >= 0) {
+                    cuts[count++] = t;
+                }
+            }
+            Arrays.sort(cuts);
+            for (int k = 0; k + 1 < count; k++) {
+                if ((cuts[k + 1] - cuts[k]) * length > EPSILON) {
+                    double middle = (cuts[k] + cuts[k + 1]) / 2;
+                    if (contains(ax + middle * dx, ay + middle * dy)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        // Where corner i lies on the segment, as a part of its length, or -1 if it is not on it between the ends
+        private double cut(int i, double ax, double ay, double dx, double dy, double length) {
+            double t = ((xs[i] - ax) * dx + (ys[i] - ay) * dy) / (length * length);
+            if (t <= 0 || t >= 1) {
+                return -1;
+            }
+            double px = ax + t * dx - xs[i];
+            double py = ay + t * dy - ys[i];
+            return px * px + py * py < EPSILON * EPSILON ? t : -1;
+        }
+
+        // Whether the point is inside, not counting the edges
+        boolean contains(double x, double y) {
+            if (x <= minX || x >= maxX || y <= minY || y >= maxY) {
+                return false;
+            }
+            int n = xs.length;
+            boolean inside = false;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                if (segmentDistance(x, y, xs[j], ys[j], xs[i], ys[i]) < EPSILON) {
+                    return false;
+                }
+                if ((ys[i] > y) != (ys[j] > y) && x < (xs[j] - xs[i]) * (y - ys[i]) / (ys[j] - ys[i]) + xs[i]) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+
+        // Distance from the point to the obstacle, 0 inside it
+        double distance(double x, double y) {
+            if (contains(x, y)) {
+                return 0.0;
+            }
+            double closest = Double.MAX_VALUE;
+            for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+                closest = Math.min(closest, segmentDistance(x, y, xs[j], ys[j], xs[i], ys[i]));
+            }
+            return closest;
+        }
+
+        // Moves every edge of a counter-clockwise polygon outwards and puts the corners where the moved edges meet
+        private static void grow(double[] xs, double[] ys, double clearance, double[] grownX, double[] grownY) {
+            int n = xs.length;
+            for (int i = 0; i < n; i++) {
+                int before = (i + n - 1) % n;
+                int after = (i + 1) % n;
+                double[] in = outwardNormal(xs[before], ys[before], xs[i], ys[i]);
+                double[] out = outwardNormal(xs[i], ys[i], xs[after], ys[after]);
+                // Along the sum of the normals, far enough for both edges to be the clearance away
+                double scale = clearance / Math.max(0.1, 1 + in[0] * out[0] + in[1] * out[1]);
+                grownX[i] = xs[i] + (in[0] + out[0]) * scale;
+                grownY[i] = ys[i] + (in[1] + out[1]) * scale;
+            }
+        }
+
+        private static double[] outwardNormal(double fromX, double fromY, double toX, double toY) {
+            double dx = toX - fromX;
+            double dy = toY - fromY;
+            double length = Math.sqrt(dx * dx + dy * dy);
+            return length == 0 ? new double[]{0, 0} : new double[]{dy / length, -dx / length};
+        }
+
+        private static double signedArea(double[] xs, double[] ys) {
+            double area = 0.0;
+            for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+                area += xs[j] * ys[i] - xs[i] * ys[j];
+            }
+            return area / 2;
+        }
+    }
+
+    static double segmentDistance(double x, double y, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double squared = dx * dx + dy * dy;
+        double t = squared == 0 ? 0 : Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / squared));
+        double px = ax + t * dx - x;
+        double py = ay + t * dy - y;
+        return Math.sqrt(px * px + py * py);
+    }
+}
@@ -0,0 +1,340 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Distances between stations around the obstacles of an {@link ObstacleMap}: the length of the shortest path
+ * that keeps clear of every obstacle, and the corners it goes round, for the compiler to fly.
+ *
+ * A shortest path among polygons is straight or runs from corner to corner, so it is found on the visibility
+ * graph of the stations and the corners of the obstacles. The graph of the corners is built once per map;
+ * every station then runs Dijkstra from the corners it sees, and its distance to another station is the
+ * straight line if that is clear, or else the best of the corners that station sees plus the last stretch.
+ * Rows are independent and computed in parallel, and every pair is taken from the row of its lower station
+ * so that the matrix is symmetric. Distances are rounded up to the millimetre like {@link DistanceMatrixBuilder}
+ * does.
+ *
+ * Editing the map only recomputes the rows it can change. A new obstacle takes space away, so the only paths
+ * that change are the ones it blocks. A removed obstacle can only shorten a path that is not straight already,
+ * and only if the obstacle is no farther from both stations together than the path is long. Only the rows of
+ * the stations of such pairs are computed again.
+ */
+public class ObstacleRouter {
+
+    // Below this many stations the rows are not worth a parallel stream
+    static final int PARALLEL_THRESHOLD = 32;
+
+    private static final double EPSILON = 1e-9;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final ObstacleMap map;
+    private final double[][] distances;
+    private final Row[] rows;
+    private int recomputedRows;
+
+    public ObstacleRouter(Station[] stations, ObstacleMap map) {
+        int n = stations.length;
+        this.xs = new double[n];
+        this.ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = stations[i].getX();
+            ys[i] = stations[i].getY();
+        }
+        this.map = map;
+        this.distances = new double[n][n];
+        this.rows = new Row[n];
+        checkStations();
+
+        boolean[] all = new boolean[n];
+        Arrays.fill(all, true);
+        update(all);
+    }
+
+    /* ---------------------------------- PUBLIC API ---------------------------------- */
+
+    // The distance matrix of the stations around the obstacles; edits of the map update it in place
+    public double[][] getDistances() {
+        return distances;
+    }
+
+    // Corners between two stations, in the order the drone passes them, as {x, y} in metres
+    public List<double[]> detour(int from, int to) {
+        int low = Math.min(from, to);
+        int high = Math.max(from, to);
+        Row row = rows[low];
+        List<double[]> corners = new ArrayList<>();
+        for (int corner = row.via[high]; corner >= 0; corner = row.previous[corner]) {
+            corners.add(new double[]{row.corners.x[corner], row.corners.y[corner]});
+        }
+        // Walked back from the higher station
+        if (from == low) {
+            Collections.reverse(corners);
+        }
+        return corners;
+    }
+
+    /**
+     * Adds an obstacle and returns its id. The obstacle is not added if a station would be inside it or could
+     * no longer be reached.
+     */
+    public int addObstacle(double[] cornersX, double[] cornersY) {
+        int id = map.add(cornersX, cornersY);
+        try {
+            checkStations();
+            update(blockedBy(map.get(id)));
+        } catch (IllegalArgumentException e) {
+            map.remove(id);
+            throw e;
+        }
+        return id;
+    }
+
+    public void removeObstacle(int id) {
+        ObstacleMap.Obstacle removed = map.get(id);
+        if (removed == null) {
+            throw new IllegalArgumentException("There is no obstacle " + id);
+        }
+        boolean[] affected = shortenedWithout(removed);
+        map.remove(id);
+        update(affected);
+    }
+
+    ObstacleMap getMap() {
+        return map;
+    }
+
+    // Rows the last build or edit computed
+    int getRecomputedRows() {
+        return recomputedRows;
+    }
+
+    /* ------------------------------------- ROWS ------------------------------------- */
+
+    private void checkStations() {
+        for (int i = 0; i < xs.length; i++) {
+            if (map.inside(xs[i], ys[i])) {
+                throw new IllegalArgumentException("Station " + i + " at (" + xs[i] + ", " + ys[i] + ") is inside an obstacle");
+            }
+        }
+    }
+
+    // Stations of every pair whose path goes through the obstacle
+    private boolean[] blockedBy(ObstacleMap.Obstacle obstacle) {
+        int n = xs.length;
+        boolean[] affected = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if ((!affected[i] || !affected[j]) && blocks(obstacle, i, j)) {
+                    affected[i] = true;
+                    affected[j] = true;
+                }
+            }
+        }
+        return affected;
+    }
+
+    private boolean blocks(ObstacleMap.Obstacle obstacle, int from, int to) {
+        double x = xs[from];
+        double y = ys[from];
+        for (double[] corner : detour(from, to)) {
+            if (obstacle.blocks(x, y, corner[0], corner[1])) {
+                return true;
+            }
+            x = corner[0];
+            y = corner[1];
+        }
+        return obstacle.blocks(x, y, xs[to], ys[to]);
+    }
+
+    // Stations of every pair with a path round something that could get shorter through where the obstacle was
+    private boolean[] shortenedWithout(ObstacleMap.Obstacle obstacle) {
+        int n = xs.length;
+        double[] away = new double[n];
+        for (int i = 0; i < n; i++) {
+            away[i] = obstacle.distance(xs[i], ys[i]);
+        }
+        boolean[] affected = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Row row = rows[i];
+            for (int j = i + 1; j < n; j++) {
+                if (row.via[j] >= 0 && away[i] + away[j] <= distances[i][j] + EPSILON) {
+                    affected[i] = true;
+                    affected[j] = true;
+                }
+            }
+        }
+        return affected;
+    }
+
+    // Computes the rows of the affected stations on the current map, and only keeps them if every station is reachable
+    private void update(boolean[] affected) {
+        int n = xs.length;
+        Corners corners = new Corners(map, xs, ys);
+        Row[] computed = new Row[n];
+        IntStream stations = IntStream.range(0, n).filter(i -> affected[i]);
+        if (n >= PARALLEL_THRESHOLD) {
+            stations = stations.parallel();
+        }
+        stations.forEach(i -> computed[i] = new Row(i, corners, map, xs, ys));
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (computed[i] == null) {
+                continue;
+            }
+            count++;
+            for (int j = i + 1; j < n; j++) {
+                if (computed[i].length[j] == Double.POSITIVE_INFINITY) {
+                    throw new IllegalArgumentException("Station " + j + " cannot be reached from station " + i);
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (computed[i] != null) {
+                rows[i] = computed[i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (!affected[i]) {
+                continue;
+            }
+            for (int j = 0; j < n; j++) {
+                double length = i == j ? 0.0 : DistanceMatrixBuilder.roundUp(rows[Math.min(i, j)].length[Math.max(i, j)]);
+                distances[i][j] = length;
+                distances[j][i] = length;
+            }
+        }
+        recomputedRows = count;
+    }
+
+    /**
+     * Shortest paths from one station to all others, over the corners as they were when it was computed.
+     */
+    private static final class Row {
+        final Corners corners;
+        final double[] length;
+        // Last corner before every station, -1 for a straight line
+        final int[] via;
+        // Corner before every corner, -1 for the station itself
+        final int[] previous;
+
+        Row(int station, Corners corners, ObstacleMap map, double[] xs, double[] ys) {
+            this.corners = corners;
+            int m = corners.x.length;
+            double[] reached = new double[m];
+            this.previous = new int[m];
+            boolean[] done = new boolean[m];
+            for (int c = 0; c < m; c++) {
+                reached[c] = corners.seen[station][c] ? distance(xs[station], ys[station], corners.x[c], corners.y[c]) : Double.POSITIVE_INFINITY;
+                previous[c] = -1;
+            }
+
+            // Dijkstra over the dense corner graph
+            for (int k = 0; k < m; k++) {
+                int next = -1;
+                for (int c = 0; c < m; c++) {
+                    if (!done[c] && (next < 0 || reached[c] < reached[next])) {
+                        next = c;
+                    }
+                }
+                if (reached[next] == Double.POSITIVE_INFINITY) {
+                    break;
+                }
+                done[next] = true;
+                double[] edges = corners.length[next];
+                for (int c = 0; c < m; c++) {
+                    if (!done[c] && reached[next] + edges[c] < reached[c]) {
+                        reached[c] = reached[next] + edges[c];
+                        previous[c] = next;
+                    }
+                }
+            }
+
+            int n = xs.length;
+            this.length = new double[n];
+            this.via = new int[n];
+            for (int j = 0; j < n; j++) {
+                via[j] = -1;
+                if (j == station) {
+                    continue;
+                }
+                double best = map.blocked(xs[station], ys[station], xs[j], ys[j])
+                        ? Double.POSITIVE_INFINITY : distance(xs[station], ys[station], xs[j], ys[j]);
+                for (int c = 0; c < m; c++) {
+                    if (corners.seen[j][c]) {
+                        double candidate = reached[c] + distance(corners.x[c], corners.y[c], xs[j], ys[j]);
+                        if (candidate < best - EPSILON) {
+                            best = candidate;
+                            via[j] = c;
+                        }
+                    }
+                }
+                length[j] = best;
+            }
+        }
+    }
+
+    /**
+     * The corners of a map that are not inside another obstacle, which of them see each other, and which of them
+     * every station sees.
+     */
+    private static final class Corners {
+        final double[] x;
+        final double[] y;
+        final double[][] length;
+        final boolean[][] seen;
+
+        Corners(ObstacleMap map, double[] xs, double[] ys) {
+            List<double[]> free = new ArrayList<>();
+            for (ObstacleMap.Obstacle obstacle : map.getObstacles()) {
+                for (int i = 0; i < obstacle.corners(); i++) {
+                    if (!map.inside(obstacle.xs[i], obstacle.ys[i])) {
+                        free.add(new double[]{obstacle.xs[i], obstacle.ys[i]});
+                    }
+                }
+            }
+            int m = free.size();
+            this.x = new double[m];
+            this.y = new double[m];
+            for (int c = 0; c < m; c++) {
+                x[c] = free.get(c)[0];
+                y[c] = free.get(c)[1];
+            }
+
+            this.length = new double[m][m];
+            IntStream corners = IntStream.range(0, m);
+            if (m >= PARALLEL_THRESHOLD) {
+                corners = corners.parallel();
+            }
+            corners.forEach(c -> {
+                for (int d = c + 1; d < m; d++) {
+                    double edge = map.blocked(x[c], y[c], x[d], y[d]) ? Double.POSITIVE_INFINITY : distance(x[c], y[c], x[d], y[d]);
+                    length[c][d] = edge;
+                    length[d][c] = edge;
+                }
+            });
+
+            int n = xs.length;
+            this.seen = new boolean[n][m];
+            IntStream stations = IntStream.range(0, n);
+            if (n >= PARALLEL_THRESHOLD) {
+                stations = stations.parallel();
+            }
+            stations.forEach(s -> {
+                for (int c = 0; c < m; c++) {
+                    seen[s][c] = !map.blocked(xs[s], ys[s], x[c], y[c]);
+                }
+            });
+        }
+    }
+
+    private static double distance(double ax, double ay, double bx, double by) {
+        double dX = bx - ax;
+        double dY = by - ay;
+        return Math.sqrt(dX * dX + dY * dY);
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Held-Karp for station counts whose tables do not fit on the heap.
+ *
+ * Only the cost layers of the current and the previous subset cardinality are kept, in two direct buffers
+ * outside the heap that are allocated once, sized to the widest layer, and taken in turns, so a solve makes no
+ * garbage per layer; costs are optionally kept in float precision. A cell is addressed by the colexicographic rank
+ * of its subset and the position of the last station among the bits of the subset, so a layer of k bits
+ * holds exactly C(m, k) * k cells. Parents are single bytes and every layer of them goes to a scratch file,
+ * mapped once, from which the walk back reads one byte per station at its offset. The file is deleted after the solve.
+ */
+public class OffHeapHeldKarpSolver implements TourSolver {
+
+    // Masks are ints and parents are bytes
+    static final int MAX_STATIONS = 32;
+
+    // Largest slice of a layer that is kept in one buffer
+    private static final int CHUNK_BITS = 30;
+
+    private static final int MIN_RANGE = 256;
+
+    private final boolean floatPrecision;
+    private final int parallelism;
+    private final Path scratchDirectory;
+
+    public OffHeapHeldKarpSolver() {
+        this(true, Runtime.getRuntime().availableProcessors(), Path.of(System.getProperty("java.io.tmpdir")));
+    }
+
+    public OffHeapHeldKarpSolver(boolean floatPrecision, int parallelism, Path scratchDirectory) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got " + parallelism);
+        }
+        this.floatPrecision = floatPrecision;
+        this.parallelism = parallelism;
+        this.scratchDirectory = scratchDirectory;
+    }
+
+    /**
+     * Bytes held off-heap for the two cost buffers, which every layer reuses, and the scratch file size,
+     * for a matrix of the given size.
+     */
+    long[] footprint(int n) {
+        int m = n - 1;
+        long widest = widestLayer(m, ParallelHeldKarpSolver.binomials(m));
+        long parents = (long) m << (m - 1);
+        return new long[]{2 * widest * (floatPrecision ? Float.BYTES : Double.BYTES), parents};
+    }
+
+    // Cells of the largest layer, C(m, k) * k for the worst k
+    private static long widestLayer(int m, long[][] binomials) {
+        long widest = 0;
+        for (int k = 1; k <= m; k++) {
+            widest = Math.max(widest, binomials[m][k] * k);
+        }
+        return widest;
+    }
+
+    // Whether costs are kept as floats, whose rounding may make the tour slightly worse than the optimum
+    boolean isFloatPrecision() {
+        return floatPrecision;
+    }
+
+    @Override
+    public Tour solve(double[][] distances) {
+        int n = distances.length;
+        if (n <= 3) {
+            return HeldKarpSolver.trivialTour(distances);
+        }
+        if (n > MAX_STATIONS) {
+            throw new IllegalArgumentException("Off-heap Held-Karp supports at most " + MAX_STATIONS + " stations, got " + n);
+        }
+
+        Path scratch = null;
+        try {
+            scratch = Files.createTempFile(scratchDirectory, "held-karp-", ".parents");
+            try (FileChannel channel = FileChannel.open(scratch, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                int[] path = new Search(distances, channel).run();
+                return Tour.of(path, distances);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (scratch != null) {
+                try {
+                    Files.deleteIfExists(scratch);
+                } catch (IOException ignored) {
+                    // The temporary directory gets cleaned up eventually
+                }
+            }
+        }
+    }
+
+    /* ------------------------------- ONE SOLVE -------------------------------- */
+
+    private final class Search {
+        final int m;
+        final long[][] binomials;
+        final double[] fromDepot;
+        final double[] toDepot;
+        final double[] into;
+        final FileChannel channel;
+
+        // Offset of every layer of parents in the scratch file
+        final long[] parentOffsets;
+
+        Layer previousCosts;
+        Layer costs;
+        Chunks parents;
+
+        Search(double[][] distances, FileChannel channel) {
+            this.m = distances.length - 1;
+            this.binomials = ParallelHeldKarpSolver.binomials(m);
+            this.channel = channel;
+            this.fromDepot = new double[m];
+            this.toDepot = new double[m];
+            this.into = new double[m * m];
+
+            for (int j = 0; j < m; j++) {
+                fromDepot[j] = distances[0][j + 1];
+                toDepot[j] = distances[j + 1][0];
+                for (int k = 0; k < m; k++) {
+                    into[j * m + k] = distances[k + 1][j + 1];
+                }
+            }
+
+            parentOffsets = new long[m + 2];
+            for (int k = 1; k <= m; k++) {
+                parentOffsets[k + 1] = parentOffsets[k] + binomials[m][k] * k;
+            }
+        }
+
+        int[] run() throws IOException {
+            // Two cost buffers taken in turns and one mapping of all parents, made once for the whole solve
+            long widest = widestLayer(m, binomials);
+            costs = new Layer(widest);
+            Layer spare = new Layer(widest);
+            parents = Chunks.map(channel, 0, parentOffsets[m + 1]);
+
+            ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+            try {
+                for (int k = 1; k <= m; k++) {
+                    long layerSize = binomials[m][k];
+                    previousCosts = costs;
+                    costs = spare;
+                    spare = previousCosts;
+
+                    if (pool == null) {
+                        relaxRange(k, 0, layerSize);
+                    } else {
+                        long grain = Math.max(MIN_RANGE, layerSize / (parallelism * 8L));
+                        pool.invoke(new RangeTask(k, 0, layerSize, grain));
+                    }
+                }
+            } finally {
+                if (pool != null) {
+                    pool.shutdown();
+                }
+            }
+            return backtrack();
+        }
+
+        void relaxRange(int k, long from, long to) {
+            int mask = ParallelHeldKarpSolver.unrank(from, k, binomials);
+            for (long rank = from; rank < to; rank++) {
+                relax(mask, rank, k);
+                if (rank + 1 < to) {
+                    mask = ParallelHeldKarpSolver.nextSubset(mask);
+                }
+            }
+        }
+
+        // Same recurrence and tie-breaking as HeldKarpSolver.Table.relax, on compact cells
+        void relax(int mask, long rank, int k) {
+            long parentOffset = parentOffsets[k];
+            int jPosition = 0;
+            for (int rest = mask; rest != 0; rest &= rest - 1, jPosition++) {
+                int j = Integer.numberOfTrailingZeros(rest);
+                long cell = rank * k + jPosition;
+                int previous = mask ^ (1 << j);
+
+                if (previous == 0) {
+                    costs.set(cell, fromDepot[j]);
+                    parents.set(parentOffset + cell, (byte) -1);
+                    continue;
+                }
+
+                long base = ParallelHeldKarpSolver.rank(previous, binomials) * (k - 1);
+                double best = Double.MAX_VALUE;
+                int bestK = -1;
+                int row = j * m;
+                int kPosition = 0;
+                for (int others = previous; others != 0; others &= others - 1, kPosition++) {
+                    int bit = Integer.numberOfTrailingZeros(others);
+                    double candidate = previousCosts.get(base + kPosition) + into[row + bit];
+                    if (candidate < best) {
+                        best = candidate;
+                        bestK = bit;
+                    }
+                }
+                costs.set(cell, best);
+                parents.set(parentOffset + cell, (byte) bestK);
+            }
+        }
+
+        int[] backtrack() {
+            double best = Double.MAX_VALUE;
+            int last = -1;
+            for (int j = 0; j < m; j++) {
+                double candidate = costs.get(j) + toDepot[j];
+                if (candidate < best) {
+                    best = candidate;
+                    last = j;
+                }
+            }
+            previousCosts = null;
+            costs = null;
+
+            int mask = (1 << m) - 1;
+            int[] path = new int[m + 2];
+            for (int k = m; k > 0; k--) {
+                path[k] = last + 1;
+                long cell = ParallelHeldKarpSolver.rank(mask, binomials) * k + Integer.bitCount(mask & ((1 << last) - 1));
+                int previous = parents.get(parentOffsets[k] + cell);
+                mask ^= 1 << last;
+                last = previous;
+            }
+            return path;
+        }
+
+        private final class RangeTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int k;
+            private final long from;
+            private final long to;
+            private final long grain;
+
+            RangeTask(int k, long from, long to, long grain) {
+                this.k = k;
+                this.from = from;
+                this.to = to;
+                this.grain = grain;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > grain) {
+                    long middle = (from + to) >>> 1;
+                    invokeAll(new RangeTask(k, from, middle, grain), new RangeTask(k, middle, to, grain));
+                } else {
+                    relaxRange(k, from, to);
+                }
+            }
+        }
+    }
+
+    /* ------------------------------ OFF-HEAP STORAGE ------------------------------ */
+
+    // One cost layer in direct buffers, read and written with absolute indices only
+    private final class Layer {
+        private final ByteBuffer[] chunks;
+        private final int shift = floatPrecision ? 2 : 3;
+
+        Layer(long cells) {
+            chunks = Chunks.allocate(cells << shift);
+        }
+
+        double get(long cell) {
+            long offset = cell << shift;
+            ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_BITS)];
+            int index = (int) (offset & ((1L << CHUNK_BITS) - 1));
+            return floatPrecision ? chunk.getFloat(index) : chunk.getDouble(index);
+        }
+
+        void set(long cell, double value) {
+            long offset = cell << shift;
+            ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_BITS)];
+            int index = (int) (offset & ((1L << CHUNK_BITS) - 1));
+            if (floatPrecision) {
+                chunk.putFloat(index, (float) value);
+            } else {
+                chunk.putDouble(index, value);
+            }
+        }
+    }
+
+    // A byte array of any length split over buffers of at most 2^CHUNK_BITS bytes
+    private static final class Chunks {
+        private final ByteBuffer[] buffers;
+
+        private Chunks(ByteBuffer[] buffers) {
+            this.buffers = buffers;
+        }
+
+        static ByteBuffer[] allocate(long bytes) {
+            ByteBuffer[] buffers = new ByteBuffer[(int) ((bytes + (1L << CHUNK_BITS) - 1) >>> CHUNK_BITS)];
+            for (int i = 0; i < buffers.length; i++) {
+                long size = Math.min(1L << CHUNK_BITS, bytes - ((long) i << CHUNK_BITS));
+                buffers[i] = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+            }
+            return buffers;
+        }
+
+        static Chunks map(FileChannel channel, long position, long bytes) throws IOException {
+            MappedByteBuffer[] buffers = new MappedByteBuffer[(int) ((bytes + (1L << CHUNK_BITS) - 1) >>> CHUNK_BITS)];
+            for (int i = 0; i < buffers.length; i++) {
+                long start = (long) i << CHUNK_BITS;
+                long size = Math.min(1L << CHUNK_BITS, bytes - start);
+                buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, position + start, size);
+            }
+            return new Chunks(buffers);
+        }
+
+        byte get(long index) {
+            return buffers[(int) (index >>> CHUNK_BITS)].get((int) (index & ((1L << CHUNK_BITS) - 1)));
+        }
+
+        void set(long index, byte value) {
+            buffers[(int) (index >>> CHUNK_BITS)].put((int) (index & ((1L << CHUNK_BITS) - 1)), value);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Held-Karp with every cardinality layer of subsets split across a fork-join pool.
+ *
+ * Layer k only reads layer k - 1, so the subsets of one layer can be relaxed in any order. A layer is
+ * cut into ranges of colexicographic ranks, the first subset of a range is unranked directly and the
+ * rest of the range is walked with Gosper's hack. Every cell is computed by the same code as in
+ * {@link HeldKarpSolver}, so the result is bit-for-bit the one of the sequential solver.
+ */
+public class ParallelHeldKarpSolver implements TourSolver {
+
+    // Smallest number of subsets a task is split into, below this forking costs more than it saves
+    private static final int MIN_RANGE = 256;
+
+    private final int parallelism;
+
+    public ParallelHeldKarpSolver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelHeldKarpSolver(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public Tour solve(double[][] distances) {
+        int n = distances.length;
+        if (n <= 3) {
+            return HeldKarpSolver.trivialTour(distances);
+        }
+        HeldKarpSolver.checkSize(n);
+
+        HeldKarpSolver.Table table = new HeldKarpSolver.Table(distances);
+        long[][] binomials = binomials(table.m);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (int k = 1; k <= table.m; k++) {
+                long layerSize = binomials[table.m][k];
+                long grain = Math.max(MIN_RANGE, layerSize / (parallelism * 8L));
+                pool.invoke(new LayerTask(table, binomials, k, 0, layerSize, grain));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return table.closeTour();
+    }
+
+    /* ------------------------------ SUBSET RANKS ------------------------------ */
+
+    static long[][] binomials(int m) {
+        long[][] c = new long[m + 1][m + 1];
+        for (int i = 0; i <= m; i++) {
+            c[i][0] = 1;
+            for (int j = 1; j <= i; j++) {
+                c[i][j] = c[i - 1][j - 1] + c[i - 1][j];
+            }
+        }
+        return c;
+    }
+
+    // The subset with k bits whose colexicographic rank is the given one
+    static int unrank(long rank, int k, long[][] binomials) {
+        int mask = 0;
+        for (int bits = k; bits > 0; bits--) {
+            int position = bits - 1;
+            while (binomials[position + 1][bits] <= rank) {
+                position++;
+            }
+            mask |= 1 << position;
+            rank -= binomials[position][bits];
+        }
+        return mask;
+    }
+
+    // Colexicographic rank of a subset among the subsets with the same number of bits
+    static long rank(int mask, long[][] binomials) {
+        long rank = 0;
+        int bits = 0;
+        for (int rest = mask; rest != 0; rest &= rest - 1) {
+            bits++;
+            rank += binomials[Integer.numberOfTrailingZeros(rest)][bits];
+        }
+        return rank;
+    }
+
+    // Gosper's hack: the next larger integer with the same number of set bits
+    static int nextSubset(int mask) {
+        int lowest = mask & -mask;
+        int ripple = mask + lowest;
+        return (((ripple ^ mask) >>> 2) / lowest) | ripple;
+    }
+
+    /* -------------------------------- TASKS ---------------------------------- */
+
+    private static final class LayerTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final HeldKarpSolver.Table table;
+        private final long[][] binomials;
+        private final int k;
+        private final long from;
+        private final long to;
+        private final long grain;
+
+        LayerTask(HeldKarpSolver.Table table, long[][] binomials, int k, long from, long to, long grain) {
+            this.table = table;
+            this.binomials = binomials;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > grain) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new LayerTask(table, binomials, k, from, middle, grain),
+                        new LayerTask(table, binomials, k, middle, to, grain));
+                return;
+            }
+            int mask = unrank(from, k, binomials);
+            for (long rank = from; rank < to; rank++) {
+                table.relax(mask);
+                if (rank + 1 < to) {
+                    mask = nextSubset(mask);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,394 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers finished plans by the stations they were made for, so that a mission that was planned before is
+ * answered without building its matrix or running a solver again.
+ *
+ * The key is canonical: the control station followed by the other stations sorted by their coordinates,
+ * rounded to the millimetre like the distance matrix. The same stations in any order therefore share one
+ * entry, and the cached tour is mapped back to the order of every request. A heuristic tour is only reused
+ * for a request with no more time than it was planned with; an exact tour always is.
+ *
+ * Missions of up to {@link #TABLE_STATIONS} stations are planned with Held-Karp, when one core fills its table
+ * within the budget, and the table is kept with the tour. The table holds the optimum of every subset of its stations, so any mission over a subset with
+ * the same control station is answered from it exactly, without planning.
+ *
+ * Entries are evicted least recently used first, once there are more than maxEntries of them or they take
+ * more than maxBytes. Tours can be saved to a file and loaded again; tables are not saved, since they are
+ * large and quick to rebuild.
+ */
+final class PlanCache {
+
+    // Largest mission whose Held-Karp table is kept, 4.4 MB at 16 stations
+    static final int TABLE_STATIONS = 16;
+
+    // Tours file: int magic "PLNC", int version, int entries, then every entry
+    static final int MAGIC = 0x504c4e43;
+    static final int VERSION = 1;
+
+    // Coordinates are compared in millimetres
+    private static final double RESOLUTION = 1000.0;
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    // In access order, the eldest entry is the least recently used one
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Key> tables = new LinkedHashSet<>();
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong subsetHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    PlanCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Plan over the stations, index 0 being the control station, from the cache if it can be answered from
+     * there and otherwise planned within the budget and cached. The path refers to the indices of the request.
+     */
+    RoutePlan plan(double[] xs, double[] ys, long budgetMillis) {
+        long start = System.nanoTime();
+        int[] order = canonicalOrder(xs, ys);
+        Key key = new Key(xs, ys, order);
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && (entry.exact() || entry.budgetMillis >= budgetMillis)) {
+                hits.incrementAndGet();
+                return entry.plan(order, start);
+            }
+            if (order.length > 3 && order.length <= TABLE_STATIONS) {
+                RoutePlan fromTable = fromTables(key, order, start);
+                if (fromTable != null) {
+                    subsetHits.incrementAndGet();
+                    return fromTable;
+                }
+            }
+        }
+        misses.incrementAndGet();
+
+        // Planned outside the lock, in canonical order; two requests for the same stations may both plan it
+        int n = order.length;
+        double[] cx = new double[n];
+        double[] cy = new double[n];
+        for (int i = 0; i < n; i++) {
+            cx[i] = xs[order[i]];
+            cy[i] = ys[order[i]];
+        }
+        double[][] distances = DistanceMatrixBuilder.build(cx, cy);
+
+        Entry entry;
+        if (n > 3 && n <= TABLE_STATIONS && RoutePlanner.heldKarpFits(n, budgetMillis)) {
+            FlightEvents.Solve event = new FlightEvents.Solve();
+            event.begin();
+            long solveStart = System.nanoTime();
+            HeldKarpSolver.Table table = HeldKarpSolver.fill(distances);
+            Tour tour = table.closeTour();
+            RoutePlanner.recordSolve(event, "HeldKarpSolver", n, tour.getCost(), tour.getCost(), 0, 0,
+                    RoutePlanner.heldKarpCells(n), System.nanoTime() - solveStart);
+            entry = new Entry(key, tour.getPath(), tour.getCost(), tour.getCost(), "HeldKarpSolver", budgetMillis, table);
+        } else {
+            RoutePlan plan = new RoutePlanner(budgetMillis, 1).plan(distances);
+            Tour tour = plan.getTour();
+            entry = new Entry(key, tour.getPath(), tour.getCost(), plan.getLowerBound(), plan.getSolver(), budgetMillis, null);
+        }
+        put(entry);
+
+        int[] path = entry.path.clone();
+        for (int i = 0; i < path.length; i++) {
+            path[i] = order[path[i]];
+        }
+        return new RoutePlan(new Tour(path, entry.cost), entry.lowerBound, entry.solver, System.nanoTime() - start);
+    }
+
+    // Exact plan from the table of a superset with the same control station, null if there is none
+    private RoutePlan fromTables(Key key, int[] order, long start) {
+        for (Key tableKey : tables) {
+            int[] bits = tableKey.bitsOf(key);
+            if (bits == null) {
+                continue;
+            }
+            Entry entry = entries.get(tableKey);
+            int mask = 0;
+            int[] positionOfRow = new int[tableKey.size()];
+            for (int i = 1; i < bits.length; i++) {
+                mask |= 1 << bits[i];
+                positionOfRow[bits[i] + 1] = i;
+            }
+            Tour tour = entry.table.closeTour(mask);
+            int[] path = tour.getPath();
+            for (int i = 0; i < path.length; i++) {
+                path[i] = order[positionOfRow[path[i]]];
+            }
+            return new RoutePlan(new Tour(path, tour.getCost()), tour.getCost(), "HeldKarpSolver", System.nanoTime() - start);
+        }
+        return null;
+    }
+
+    private synchronized void put(Entry entry) {
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        Entry replaced = entries.put(entry.key, entry);
+        if (replaced != null) {
+            bytes -= replaced.bytes;
+            tables.remove(replaced.key);
+        }
+        bytes += entry.bytes;
+        if (entry.table != null) {
+            tables.add(entry.key);
+        }
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            bytes -= evicted.bytes;
+            tables.remove(evicted.key);
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Indices of the request in canonical order: the control station, then the others by x and y
+    private static int[] canonicalOrder(double[] xs, double[] ys) {
+        int n = xs.length;
+        long[] mx = new long[n];
+        long[] my = new long[n];
+        Integer[] others = new Integer[n - 1];
+        for (int i = 0; i < n; i++) {
+            mx[i] = millimetres(xs[i]);
+            my[i] = millimetres(ys[i]);
+            if (i > 0) {
+                others[i - 1] = i;
+            }
+        }
+        Arrays.sort(others, (a, b) -> mx[a] != mx[b] ? Long.compare(mx[a], mx[b]) : Long.compare(my[a], my[b]));
+        int[] order = new int[n];
+        for (int i = 1; i < n; i++) {
+            order[i] = others[i - 1];
+        }
+        return order;
+    }
+
+    private static long millimetres(double metres) {
+        return Math.round(metres * RESOLUTION);
+    }
+
+    /* ---------------------------------- PERSISTENCE --------------------------------- */
+
+    // Writes every tour to the file, replacing it only once it is complete
+    synchronized void save(Path file) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                out.writeInt(entry.key.coordinates.length);
+                for (long coordinate : entry.key.coordinates) {
+                    out.writeLong(coordinate);
+                }
+                out.writeInt(entry.path.length);
+                for (int row : entry.path) {
+                    out.writeInt(row);
+                }
+                out.writeDouble(entry.cost);
+                out.writeDouble(entry.lowerBound);
+                out.writeUTF(entry.solver);
+                out.writeLong(entry.budgetMillis);
+            }
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Adds the tours of the file, least recently used first as they were saved
+    void load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a plan cache file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+            int count = in.readInt();
+            for (int e = 0; e < count; e++) {
+                long[] coordinates = new long[in.readInt()];
+                for (int i = 0; i < coordinates.length; i++) {
+                    coordinates[i] = in.readLong();
+                }
+                int[] path = new int[in.readInt()];
+                for (int i = 0; i < path.length; i++) {
+                    path[i] = in.readInt();
+                }
+                double cost = in.readDouble();
+                double lowerBound = in.readDouble();
+                String solver = in.readUTF();
+                long budgetMillis = in.readLong();
+                put(new Entry(new Key(coordinates), path, cost, lowerBound, solver, budgetMillis, null));
+            }
+        }
+    }
+
+    /* ------------------------------------ STATS ------------------------------------- */
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getSubsetHits() {
+        return subsetHits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries (%d tables) in %.1f MB, %d hits, %d subset hits, %d misses, %d evictions",
+                entries.size(), tables.size(), bytes / 1e6, hits.get(), subsetHits.get(), misses.get(), evictions.get());
+    }
+
+    /* ------------------------------------- KEYS ------------------------------------- */
+
+    /**
+     * Canonical station set: x and y in millimetres of the control station, then of the others in sorted
+     * order, with a 64-bit hash of all of them.
+     */
+    static final class Key {
+        final long[] coordinates;
+        final long hash;
+
+        Key(double[] xs, double[] ys, int[] order) {
+            this(canonical(xs, ys, order));
+        }
+
+        Key(long[] coordinates) {
+            this.coordinates = coordinates;
+            long h = 0xcbf29ce484222325L;
+            for (long coordinate : coordinates) {
+                h = (h ^ coordinate) * 0x100000001b3L;
+                h ^= h >>> 29;
+            }
+            this.hash = h;
+        }
+
+        private static long[] canonical(double[] xs, double[] ys, int[] order) {
+            long[] coordinates = new long[2 * order.length];
+            for (int i = 0; i < order.length; i++) {
+                coordinates[2 * i] = millimetres(xs[order[i]]);
+                coordinates[2 * i + 1] = millimetres(ys[order[i]]);
+            }
+            return coordinates;
+        }
+
+        int size() {
+            return coordinates.length / 2;
+        }
+
+        /**
+         * For a set with the same control station whose stations are all in this one, the bit of every one of
+         * them in this set's table (index 0 unused); null otherwise. Both lists are sorted, so one merge does it.
+         */
+        int[] bitsOf(Key subset) {
+            if (subset.size() > size() || subset.coordinates[0] != coordinates[0] || subset.coordinates[1] != coordinates[1]) {
+                return null;
+            }
+            int[] bits = new int[subset.size()];
+            int j = 1;
+            for (int i = 1; i < subset.size(); i++) {
+                while (j < size() && compare(coordinates, j, subset.coordinates, i) < 0) {
+                    j++;
+                }
+                if (j == size() || compare(coordinates, j, subset.coordinates, i) != 0) {
+                    return null;
+                }
+                bits[i] = j - 1;
+                j++;
+            }
+            return bits;
+        }
+
+        private static int compare(long[] a, int i, long[] b, int j) {
+            int byX = Long.compare(a[2 * i], b[2 * j]);
+            return byX != 0 ? byX : Long.compare(a[2 * i + 1], b[2 * j + 1]);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).hash == hash && Arrays.equals(((Key) other).coordinates, coordinates);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        // Tour over the rows of the canonical order
+        final int[] path;
+        final double cost;
+        final double lowerBound;
+        final String solver;
+        final long budgetMillis;
+        final HeldKarpSolver.Table table;
+        final long bytes;
+
+        Entry(Key key, int[] path, double cost, double lowerBound, String solver, long budgetMillis, HeldKarpSolver.Table table) {
+            this.key = key;
+            this.path = path;
+            this.cost = cost;
+            this.lowerBound = lowerBound;
+            this.solver = solver;
+            this.budgetMillis = budgetMillis;
+            this.table = table;
+            this.bytes = 128 + (long) key.coordinates.length * Long.BYTES + (long) path.length * Integer.BYTES
+                    + (table == null ? 0 : table.bytes());
+        }
+
+        boolean exact() {
+            return lowerBound >= cost;
+        }
+
+        RoutePlan plan(int[] order, long start) {
+            int[] mapped = new int[path.length];
+            for (int i = 0; i < path.length; i++) {
+                mapped[i] = order[path[i]];
+            }
+            return new RoutePlan(new Tour(mapped, cost), lowerBound, solver, System.nanoTime() - start);
+        }
+    }
+}
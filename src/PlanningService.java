@@ -0,0 +1,567 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Plans routes over HTTP from one long-running JVM, for any number of clients at the same time.
+ *
+ *   GET  /plan?catalogue=lab&stations=1,3,5&budget=100   plans over stations of a catalogue; the control
+ *                                                        station is always added, no stations means all of them
+ *   POST /plan?budget=100                                 plans over the stations in the body, one "x y" per line
+ *   GET  /catalogues                                      the loaded catalogues and their sizes
+ *   GET  /stats                                           what the service has done so far
+ *   GET  /metrics                                         solve and matrix timings, in the Prometheus text format
+ *
+ *   POST   /missions?catalogue=lab&stations=1,3,5         starts a live mission, over the stations in the body
+ *                                                        when no catalogue is given, and answers its id
+ *   GET    /missions/7                                    the tour of a live mission
+ *   POST   /missions/7?add=1.2,3.4                        adds a station at x,y and answers its id
+ *   POST   /missions/7?remove=3                           removes a station that is not visited yet
+ *   POST   /missions/7?move=3&to=1.2,3.4                  moves a station
+ *   POST   /missions/7?arrived=3                          the drone has reached a station
+ *   DELETE /missions/7                                    ends a live mission
+ *
+ * Every plan is made on a worker thread of a fixed pool with a bounded queue, with a planner of its own.
+ * Requests that find the queue full are answered 503 straight away instead of piling up. The budget of a
+ * request (100 ms by default) counts from when it arrived: the planner only gets what is left of it after the
+ * wait in the queue, and a request whose budget is used up in the queue is answered 504 without planning.
+ * Replies are JSON; paths refer to the station ids of the request, 0 being the control station.
+ *
+ * Plans go through a {@link PlanCache}, so the same stations, in any order, or a subset of a small mission
+ * planned before, are answered from memory. With -Ddrone.planCache=file the cached tours are loaded from the
+ * file at start-up and saved to it on shutdown.
+ *
+ * A live mission keeps its matrix and tour in an {@link IncrementalPlanner}, which patches both in a few
+ * milliseconds when a station is added, removed or moved, and never changes the part already flown. Its
+ * stations keep the ids of the request that started it, added ones get the next free id. Changes are made on
+ * the workers too, one at a time for every mission.
+ *
+ * Usage: java PlanningService [port] [catalogueDirectory] [workers] [queueCapacity]
+ */
+public class PlanningService implements Closeable {
+
+    static final int DEFAULT_PORT = 8080;
+    static final long DEFAULT_BUDGET_MILLIS = 100;
+    static final long MAX_BUDGET_MILLIS = 10_000;
+
+    // Largest mission of one request; its distance matrix alone is 32 MB
+    static final int MAX_STATIONS = 2_000;
+
+    // Plans kept in the cache at most; the cache may also take up to a quarter of the heap
+    static final int CACHE_ENTRIES = 100_000;
+
+    // Live missions kept at most, until they are ended
+    static final int MAX_MISSIONS = 1_000;
+
+    // Largest request body, enough for MAX_STATIONS lines
+    private static final int MAX_BODY_BYTES = 1 << 16;
+
+    static {
+        // The server writes the headers and the body of a reply apart, which Nagle's algorithm would hold back
+        // until the client's delayed acknowledgement, some 40 ms for every request on a kept-alive connection
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final Map<String, StationCatalogue> catalogues;
+    private final PlanCache cache;
+    private final Map<Integer, LiveMission> missions = new ConcurrentHashMap<>();
+    private final AtomicInteger missionIds = new AtomicInteger();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong planned = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong planningNanos = new AtomicLong();
+
+    public PlanningService(int port, Map<String, StationCatalogue> catalogues, PlanCache cache, int workers, int queueCapacity) throws IOException {
+        this.catalogues = catalogues;
+        this.cache = cache;
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "planner-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // The server's own thread only reads requests and hands them on, so it never waits for a plan
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/plan", this::plan);
+        server.createContext("/missions", this::mission);
+        server.createContext("/catalogues", exchange -> reply(exchange, 200, catalogues()));
+        server.createContext("/stats", exchange -> reply(exchange, 200, stats()));
+        server.createContext("/metrics", exchange -> reply(exchange, 200, "text/plain; version=0.0.4", MetricsRegistry.global().dump()));
+        server.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Path directory = Path.of(args.length > 1 ? args[1] : "stations");
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int queueCapacity = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        PlanCache cache = new PlanCache(CACHE_ENTRIES, Runtime.getRuntime().maxMemory() / 4);
+        String cacheFile = System.getProperty("drone.planCache");
+        if (cacheFile != null && Files.exists(Path.of(cacheFile))) {
+            cache.load(Path.of(cacheFile));
+        }
+
+        PlanningService service = new PlanningService(port, StationCatalogue.loadAll(directory), cache, workers, queueCapacity);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.close();
+            if (cacheFile != null) {
+                try {
+                    cache.save(Path.of(cacheFile));
+                } catch (IOException e) {
+                    System.err.println("Cannot save the plan cache: " + e);
+                }
+            }
+        }));
+        System.out.println("Planning on " + service.getAddress() + " with " + workers + " workers, catalogues " + service.catalogues.keySet());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /* ----------------------------------- PLANNING ----------------------------------- */
+
+    private void plan(HttpExchange exchange) throws IOException {
+        long arrived = System.nanoTime();
+        received.incrementAndGet();
+
+        Station[] mission;
+        int[] ids;
+        long budgetMillis;
+        try {
+            Map<String, String> query = query(exchange.getRequestURI());
+            budgetMillis = budget(query);
+
+            if (exchange.getRequestMethod().equals("POST")) {
+                mission = StationCatalogue.parse("request", Arrays.asList(body(exchange).split("\n")));
+                ids = null;
+            } else if (exchange.getRequestMethod().equals("GET")) {
+                StationCatalogue catalogue = catalogue(query.get("catalogue"));
+                ids = stationIds(query.get("stations"), catalogue.size());
+                mission = stations(catalogue, ids);
+            } else {
+                failed.incrementAndGet();
+                reply(exchange, 405, error("Use GET or POST"));
+                return;
+            }
+            if (mission.length == 0 || mission.length > MAX_STATIONS) {
+                throw new IllegalArgumentException("A mission has 1 to " + MAX_STATIONS + " stations, got " + mission.length);
+            }
+        } catch (IllegalArgumentException e) {
+            failed.incrementAndGet();
+            reply(exchange, 400, error(e.getMessage()));
+            return;
+        }
+
+        long deadline = arrived + budgetMillis * 1_000_000L;
+        try {
+            workers.execute(() -> planAndReply(exchange, mission, ids, deadline, arrived));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            reply(exchange, 503, error("Too many plans in progress"));
+        }
+    }
+
+    private void planAndReply(HttpExchange exchange, Station[] mission, int[] ids, long deadline, long arrived) {
+        try {
+            long leftMillis = (deadline - System.nanoTime()) / 1_000_000L;
+            if (leftMillis <= 0) {
+                timedOut.incrementAndGet();
+                reply(exchange, 504, error("The budget ran out in the queue"));
+                return;
+            }
+
+            double[] xs = new double[mission.length];
+            double[] ys = new double[mission.length];
+            for (int i = 0; i < mission.length; i++) {
+                xs[i] = mission[i].getX();
+                ys[i] = mission[i].getY();
+            }
+            // Planned on this thread only, with a planner of its own when the cache cannot answer
+            RoutePlan plan = cache.plan(xs, ys, leftMillis);
+
+            planned.incrementAndGet();
+            planningNanos.addAndGet(plan.getElapsedNanos());
+            reply(exchange, 200, plan(plan, ids, System.nanoTime() - arrived));
+        } catch (IOException e) {
+            // The client is gone
+        } catch (RuntimeException | OutOfMemoryError e) {
+            failed.incrementAndGet();
+            try {
+                reply(exchange, 500, error(String.valueOf(e)));
+            } catch (IOException ignored) {
+                // The client is gone
+            }
+        }
+    }
+
+    private static long budget(Map<String, String> query) {
+        long budgetMillis = query.containsKey("budget") ? Long.parseLong(query.get("budget")) : DEFAULT_BUDGET_MILLIS;
+        if (budgetMillis <= 0 || budgetMillis > MAX_BUDGET_MILLIS) {
+            throw new IllegalArgumentException("The budget must be between 1 and " + MAX_BUDGET_MILLIS + " ms");
+        }
+        return budgetMillis;
+    }
+
+    private StationCatalogue catalogue(String name) {
+        StationCatalogue catalogue = catalogues.get(name);
+        if (catalogue == null) {
+            throw new IllegalArgumentException("Unknown catalogue " + name);
+        }
+        return catalogue;
+    }
+
+    private static Station[] stations(StationCatalogue catalogue, int[] ids) {
+        Station[] mission = new Station[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            mission[i] = catalogue.getStations()[ids[i]];
+        }
+        return mission;
+    }
+
+    // The control station followed by the listed ones, all of them if none are listed
+    private static int[] stationIds(String list, int size) {
+        if (list == null || list.isBlank()) {
+            int[] ids = new int[size];
+            Arrays.setAll(ids, i -> i);
+            return ids;
+        }
+        String[] fields = list.split(",");
+        int[] ids = new int[fields.length + 1];
+        boolean[] seen = new boolean[size];
+        seen[0] = true;
+        for (int i = 0; i < fields.length; i++) {
+            int id = Integer.parseInt(fields[i].trim());
+            if (id < 1 || id >= size) {
+                throw new IllegalArgumentException("Station " + id + " is not between 1 and " + (size - 1));
+            }
+            if (seen[id]) {
+                throw new IllegalArgumentException("Station " + id + " is listed twice");
+            }
+            seen[id] = true;
+            ids[i + 1] = id;
+        }
+        return ids;
+    }
+
+    /* ----------------------------------- MISSIONS ----------------------------------- */
+
+    private void mission(HttpExchange exchange) throws IOException {
+        long arrived = System.nanoTime();
+        received.incrementAndGet();
+
+        String method = exchange.getRequestMethod();
+        String name = exchange.getRequestURI().getPath().replaceFirst("^/missions/?", "");
+        Supplier<String> work;
+        try {
+            Map<String, String> query = query(exchange.getRequestURI());
+            if (name.isEmpty()) {
+                if (!method.equals("POST")) {
+                    failed.incrementAndGet();
+                    reply(exchange, 405, error("Use POST to start a mission"));
+                    return;
+                }
+                if (missions.size() >= MAX_MISSIONS) {
+                    rejected.incrementAndGet();
+                    reply(exchange, 503, error("Too many live missions"));
+                    return;
+                }
+                long budgetMillis = budget(query);
+                Station[] stations;
+                int[] ids;
+                if (query.containsKey("catalogue")) {
+                    StationCatalogue catalogue = catalogue(query.get("catalogue"));
+                    ids = stationIds(query.get("stations"), catalogue.size());
+                    stations = stations(catalogue, ids);
+                } else {
+                    stations = StationCatalogue.parse("request", Arrays.asList(body(exchange).split("\n")));
+                    ids = null;
+                }
+                if (stations.length == 0 || stations.length > MAX_STATIONS) {
+                    throw new IllegalArgumentException("A mission has 1 to " + MAX_STATIONS + " stations, got " + stations.length);
+                }
+                work = () -> {
+                    LiveMission mission = new LiveMission(missionIds.incrementAndGet(), stations, ids, budgetMillis);
+                    missions.put(mission.id, mission);
+                    return mission.describe(-1, System.nanoTime() - arrived);
+                };
+            } else {
+                int id = Integer.parseInt(name);
+                LiveMission mission = method.equals("DELETE") ? missions.remove(id) : missions.get(id);
+                if (mission == null) {
+                    failed.incrementAndGet();
+                    reply(exchange, 404, error("Unknown mission " + name));
+                    return;
+                }
+                switch (method) {
+                    case "GET":
+                    case "DELETE":
+                        work = () -> mission.describe(-1, System.nanoTime() - arrived);
+                        break;
+                    case "POST":
+                        work = () -> mission.change(query, arrived);
+                        break;
+                    default:
+                        failed.incrementAndGet();
+                        reply(exchange, 405, error("Use GET, POST or DELETE"));
+                        return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            failed.incrementAndGet();
+            reply(exchange, 400, error(e.getMessage()));
+            return;
+        }
+
+        try {
+            workers.execute(() -> changeAndReply(exchange, work));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            reply(exchange, 503, error("Too many plans in progress"));
+        }
+    }
+
+    private void changeAndReply(HttpExchange exchange, Supplier<String> work) {
+        try {
+            String json;
+            int status = 200;
+            try {
+                json = work.get();
+            } catch (IllegalArgumentException e) {
+                failed.incrementAndGet();
+                status = 400;
+                json = error(e.getMessage());
+            } catch (IllegalStateException e) {
+                // A station that is already visited cannot be removed
+                failed.incrementAndGet();
+                status = 409;
+                json = error(e.getMessage());
+            }
+            reply(exchange, status, json);
+        } catch (IOException e) {
+            // The client is gone
+        } catch (RuntimeException | OutOfMemoryError e) {
+            failed.incrementAndGet();
+            try {
+                reply(exchange, 500, error(String.valueOf(e)));
+            } catch (IOException ignored) {
+                // The client is gone
+            }
+        }
+    }
+
+    // A mission being flown, whose stations are known by the ids the requests use
+    private static final class LiveMission {
+        private final int id;
+        private final IncrementalPlanner planner;
+        private final Map<Integer, Station> stations = new HashMap<>();
+        private final Map<Station, Integer> ids = new IdentityHashMap<>();
+        private int nextId;
+
+        LiveMission(int id, Station[] mission, int[] ids, long budgetMillis) {
+            this.id = id;
+            for (int i = 0; i < mission.length; i++) {
+                name(ids == null ? i : ids[i], mission[i]);
+            }
+            this.planner = new IncrementalPlanner(Arrays.asList(mission), new HeuristicSolver(budgetMillis));
+        }
+
+        synchronized String change(Map<String, String> query, long arrived) {
+            int added = -1;
+            if (query.containsKey("add")) {
+                double[] at = point(query.get("add"));
+                Station station = new Station(at[0], at[1]);
+                planner.addStation(station);
+                added = nextId;
+                name(added, station);
+            } else if (query.containsKey("remove")) {
+                Station station = station(query.get("remove"));
+                planner.removeStation(station);
+                stations.remove(ids.remove(station));
+            } else if (query.containsKey("move")) {
+                Station station = station(query.get("move"));
+                double[] to = point(query.get("to"));
+                name(ids.remove(station), planner.moveStation(station, to[0], to[1]));
+            } else if (query.containsKey("arrived")) {
+                planner.arrivedAt(station(query.get("arrived")));
+            } else {
+                throw new IllegalArgumentException("Give one of add, remove, move or arrived");
+            }
+            return describe(added, System.nanoTime() - arrived);
+        }
+
+        synchronized String describe(int added, long latencyNanos) {
+            Tour tour = planner.getTour();
+            List<Station> order = planner.getStations();
+            int[] path = tour.getPath();
+            StringBuilder json = new StringBuilder("{\"mission\":").append(id);
+            if (added >= 0) {
+                json.append(",\"added\":").append(added);
+            }
+            json.append(",\"path\":[");
+            for (int i = 0; i < path.length; i++) {
+                json.append(i > 0 ? "," : "").append(ids.get(order.get(path[i])));
+            }
+            return json.append("],\"flown\":").append(planner.getFlown())
+                    .append(",\"cost\":").append(tour.getCost())
+                    .append(",\"latencyMillis\":").append(latencyNanos / 1e6)
+                    .append('}').toString();
+        }
+
+        private void name(int id, Station station) {
+            stations.put(id, station);
+            ids.put(station, id);
+            nextId = Math.max(nextId, id + 1);
+        }
+
+        private Station station(String id) {
+            Station station = stations.get(Integer.parseInt(id.trim()));
+            if (station == null) {
+                throw new IllegalArgumentException("Unknown station " + id);
+            }
+            return station;
+        }
+
+        // "x,y" in metres
+        private static double[] point(String text) {
+            String[] fields = text == null ? new String[0] : text.split(",");
+            if (fields.length != 2) {
+                throw new IllegalArgumentException("Expected x,y but got " + text);
+            }
+            return new double[] {Double.parseDouble(fields[0].trim()), Double.parseDouble(fields[1].trim())};
+        }
+    }
+
+    /* ------------------------------------ REPLIES ----------------------------------- */
+
+    private static String plan(RoutePlan plan, int[] ids, long latencyNanos) {
+        int[] path = plan.getTour().getPath();
+        StringBuilder json = new StringBuilder("{\"path\":[");
+        for (int i = 0; i < path.length; i++) {
+            json.append(i > 0 ? "," : "").append(ids == null ? path[i] : ids[path[i]]);
+        }
+        return json.append("],\"cost\":").append(plan.getTour().getCost())
+                .append(",\"lowerBound\":").append(plan.getLowerBound())
+                .append(",\"gap\":").append(plan.getGap())
+                .append(",\"solver\":\"").append(plan.getSolver())
+                .append("\",\"planningMillis\":").append(plan.getElapsedNanos() / 1e6)
+                .append(",\"latencyMillis\":").append(latencyNanos / 1e6)
+                .append('}').toString();
+    }
+
+    private String catalogues() {
+        StringBuilder json = new StringBuilder("{");
+        for (StationCatalogue catalogue : catalogues.values()) {
+            json.append(json.length() > 1 ? "," : "").append(quote(catalogue.getName())).append(':').append(catalogue.size());
+        }
+        return json.append('}').toString();
+    }
+
+    String stats() {
+        long plans = planned.get();
+        return "{\"received\":" + received.get() + ",\"planned\":" + plans + ",\"rejected\":" + rejected.get()
+                + ",\"timedOut\":" + timedOut.get() + ",\"failed\":" + failed.get() + ",\"queued\":" + workers.getQueue().size()
+                + ",\"missions\":" + missions.size() + ",\"meanPlanningMillis\":" + (plans == 0 ? 0.0 : planningNanos.get() / 1e6 / plans)
+                + ",\"cache\":{\"entries\":" + cache.size() + ",\"bytes\":" + cache.getBytes() + ",\"hits\":" + cache.getHits()
+                + ",\"subsetHits\":" + cache.getSubsetHits() + ",\"misses\":" + cache.getMisses() + ",\"evictions\":" + cache.getEvictions() + "}}";
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static String quote(String text) {
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : String.valueOf(text).toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static void reply(HttpExchange exchange, int status, String json) throws IOException {
+        reply(exchange, status, "application/json", json);
+    }
+
+    private static void reply(HttpExchange exchange, int status, String contentType, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    /* ------------------------------------ REQUESTS ---------------------------------- */
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("The body is larger than " + MAX_BODY_BYTES + " bytes");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * A planned tour together with what is known about its quality.
+ */
+public final class RoutePlan {
+    private final Tour tour;
+    private final double lowerBound;
+    private final String solver;
+    private final long elapsedNanos;
+
+    RoutePlan(Tour tour, double lowerBound, String solver, long elapsedNanos) {
+        this.tour = tour;
+        this.lowerBound = lowerBound;
+        this.solver = solver;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    Tour getTour() {
+        return tour;
+    }
+
+    double getLowerBound() {
+        return lowerBound;
+    }
+
+    // Relative distance to the lower bound, 0.0 for a proven optimal tour
+    double getGap() {
+        if (lowerBound <= 0.0) {
+            return 0.0;
+        }
+        return Math.max(0.0, (tour.getCost() - lowerBound) / lowerBound);
+    }
+
+    String getSolver() {
+        return solver;
+    }
+
+    long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s by %s in %.1f ms, gap %.2f%%", tour, solver, elapsedNanos / 1e6, getGap() * 100);
+    }
+}
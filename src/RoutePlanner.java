@@ -0,0 +1,158 @@
+import java.nio.file.Path;
+
+/**
+ * Picks the solver that fits the size of the mission and the time the caller can wait,
+ * and reports how far the returned tour can be from the optimum.
+ *
+ * The solver is picked by the budget: Held-Karp (on the heap when its table fits there, otherwise off the heap
+ * when its layers and scratch file fit) when its estimated run time fits, otherwise branch-and-bound with the
+ * budget as its time limit for missions up to {@link #BRANCH_AND_BOUND_LIMIT} stations, and the heuristic
+ * solver for larger ones. Only a tour that is proven optimal, by a double precision Held-Karp or a search
+ * that finished in time, is reported with a gap of 0; every other one gets a Held-Karp lower bound.
+ *
+ * Every solve is recorded as a {@link FlightEvents.Solve} flight recorder event and in the
+ * {@link MetricsRegistry}: its time by solver, and the nodes or table cells it took.
+ */
+public class RoutePlanner {
+
+    // Largest mission given to branch-and-bound, which needs no tables and whose run time depends on the layout
+    static final int BRANCH_AND_BOUND_LIMIT = 20;
+
+    // Time per inner Held-Karp step (m^2 * 2^m of them) on one core, the slow end of what was measured with
+    // the table allocation and collection included
+    private static final double HELD_KARP_NANOS_PER_STEP = 4.0;
+    private static final double OFF_HEAP_NANOS_PER_STEP = 5.5;
+
+    // Upper limit on the time spent on the lower bound, as a part of the whole budget
+    private static final double BOUND_SHARE = 0.2;
+
+    private final long latencyBudgetMillis;
+    private final int parallelism;
+
+    public RoutePlanner() {
+        this(100);
+    }
+
+    public RoutePlanner(long latencyBudgetMillis) {
+        this(latencyBudgetMillis, Runtime.getRuntime().availableProcessors());
+    }
+
+    public RoutePlanner(long latencyBudgetMillis, int parallelism) {
+        this.latencyBudgetMillis = latencyBudgetMillis;
+        this.parallelism = parallelism;
+    }
+
+    public RoutePlan plan(double[][] distances) {
+        FlightEvents.Solve event = new FlightEvents.Solve();
+        event.begin();
+        long start = System.nanoTime();
+        int n = distances.length;
+        TourSolver solver = chooseSolver(n);
+
+        Tour tour = solver.solve(distances);
+        double lowerBound = proven(solver) ? tour.getCost() : lowerBound(distances, tour, start);
+        long nanos = System.nanoTime() - start;
+        String name = solver.getClass().getSimpleName();
+
+        if (solver instanceof BranchAndBoundSolver) {
+            BranchAndBoundSolver search = (BranchAndBoundSolver) solver;
+            recordSolve(event, name, n, tour.getCost(), lowerBound, search.getNodesExpanded(), search.getNodesPruned(), 0, nanos);
+        } else {
+            recordSolve(event, name, n, tour.getCost(), lowerBound, 0, 0, solver instanceof HeuristicSolver ? 0 : heldKarpCells(n), nanos);
+        }
+        return new RoutePlan(tour, lowerBound, name, nanos);
+    }
+
+    // Cells of a full Held-Karp table over n stations, one per subset of the stations but the depot and end station
+    static long heldKarpCells(int n) {
+        return n <= 3 ? 0 : (long) (n - 1) << (n - 1);
+    }
+
+    // Ends the event begun at the start of the solve, commits it if it is recorded, and adds the solve to the metrics
+    static void recordSolve(FlightEvents.Solve event, String solver, int stations, double cost, double lowerBound,
+                            long nodesExpanded, long nodesPruned, long cells, long nanos) {
+        MetricsRegistry metrics = MetricsRegistry.global();
+        metrics.histogram("solve." + solver).record(nanos);
+        metrics.counter("solve.nodes.expanded").addAndGet(nodesExpanded);
+        metrics.counter("solve.nodes.pruned").addAndGet(nodesPruned);
+        metrics.counter("solve.cells").addAndGet(cells);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.solver = solver;
+            event.stations = stations;
+            event.cost = cost;
+            event.lowerBound = lowerBound;
+            event.nodesExpanded = nodesExpanded;
+            event.nodesPruned = nodesPruned;
+            event.cells = cells;
+            event.cellsPerSecond = nanos == 0 ? 0.0 : cells * 1e9 / nanos;
+            event.commit();
+        }
+    }
+
+    // Whether the solver's last tour is known to be optimal
+    private static boolean proven(TourSolver solver) {
+        if (solver instanceof OffHeapHeldKarpSolver) {
+            return !((OffHeapHeldKarpSolver) solver).isFloatPrecision();
+        }
+        if (solver instanceof BranchAndBoundSolver) {
+            return ((BranchAndBoundSolver) solver).isProven();
+        }
+        return !(solver instanceof HeuristicSolver);
+    }
+
+    TourSolver chooseSolver(int n) {
+        long budgetNanos = latencyBudgetMillis * 1_000_000L;
+        int m = n - 1;
+        double steps = heldKarpSteps(m);
+        int cores = Math.max(1, parallelism);
+
+        if (n <= HeldKarpSolver.MAX_STATIONS && fitsOnHeap(m) && steps * HELD_KARP_NANOS_PER_STEP / cores <= budgetNanos) {
+            return cores > 1 ? new ParallelHeldKarpSolver(cores) : new HeldKarpSolver();
+        }
+        if (n <= OffHeapHeldKarpSolver.MAX_STATIONS && steps * OFF_HEAP_NANOS_PER_STEP / cores <= budgetNanos) {
+            Path scratch = Path.of(System.getProperty("java.io.tmpdir"));
+            OffHeapHeldKarpSolver offHeap = new OffHeapHeldKarpSolver(true, cores, scratch);
+            if (fitsOffHeap(offHeap.footprint(n), scratch)) {
+                return offHeap;
+            }
+        }
+
+        // Leave part of the budget for building the tour and computing the bound
+        long searchMillis = Math.max(1, (long) (latencyBudgetMillis * (1.0 - BOUND_SHARE)) - 1);
+        if (n <= BRANCH_AND_BOUND_LIMIT) {
+            return new BranchAndBoundSolver(searchMillis);
+        }
+        return new HeuristicSolver(searchMillis);
+    }
+
+    // Whether one core fills a whole Held-Karp table over n stations within the budget
+    static boolean heldKarpFits(int n, long budgetMillis) {
+        return heldKarpSteps(n - 1) * HELD_KARP_NANOS_PER_STEP <= budgetMillis * 1_000_000L;
+    }
+
+    private static double heldKarpSteps(int m) {
+        return (double) m * m * Math.pow(2, m);
+    }
+
+    // A double and a byte per cell, with half of the heap left for everything else
+    private static boolean fitsOnHeap(int m) {
+        long bytes = ((long) m << m) * (Double.BYTES + 1);
+        return bytes < Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    // Two cost layers in half of the direct memory, as large as the heap unless set otherwise, and the parents on the scratch disk
+    private static boolean fitsOffHeap(long[] footprint, Path scratch) {
+        return footprint[0] < Runtime.getRuntime().maxMemory() / 2 && footprint[1] < scratch.toFile().getUsableSpace();
+    }
+
+    // Held-Karp bound with as many subgradient steps as fit in what is left of the budget
+    private double lowerBound(double[][] distances, Tour tour, long start) {
+        int n = distances.length;
+        long left = latencyBudgetMillis * 1_000_000L - (System.nanoTime() - start);
+        double nanosPerIteration = 2.0 * n * n;
+        int iterations = (int) Math.max(0, Math.min(100, left / nanosPerIteration));
+        return LowerBounds.heldKarp(distances, tour.getCost(), iterations);
+    }
+}
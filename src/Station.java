@@ -15,6 +15,10 @@ class Station {
         return y;
     }
 
-
+    double distanceTo(Station other) {
+        double dX = other.x - x;
+        double dY = other.y - y;
+        return Math.sqrt(dX * dX + dY * dY);
+    }
 
 }
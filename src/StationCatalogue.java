@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A named set of stations read from a text file, one station per line as "x y" in metres. The first station
+ * is the control station; empty lines and lines starting with # are skipped. A station's id is its position
+ * in the file, so station 0 is always the control station.
+ */
+final class StationCatalogue {
+
+    static final String EXTENSION = ".stations";
+
+    private final String name;
+    private final Station[] stations;
+
+    StationCatalogue(String name, Station[] stations) {
+        if (stations.length == 0) {
+            throw new IllegalArgumentException("Catalogue " + name + " has no control station");
+        }
+        this.name = name;
+        this.stations = stations;
+    }
+
+    static StationCatalogue load(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+        String name = fileName.endsWith(EXTENSION) ? fileName.substring(0, fileName.length() - EXTENSION.length()) : fileName;
+        return new StationCatalogue(name, parse(name, Files.readAllLines(file, StandardCharsets.UTF_8)));
+    }
+
+    // Every catalogue in the directory, by name
+    static Map<String, StationCatalogue> loadAll(Path directory) throws IOException {
+        Map<String, StationCatalogue> catalogues = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                StationCatalogue catalogue = load(file);
+                catalogues.put(catalogue.getName(), catalogue);
+            }
+        }
+        return catalogues;
+    }
+
+    // Stations in the format of a catalogue file, e.g. sent along with a request
+    static Station[] parse(String source, List<String> lines) {
+        List<Station> stations = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("[\\s,]+");
+            if (fields.length != 2) {
+                throw new IllegalArgumentException(source + ", line " + (i + 1) + ": expected \"x y\", got \"" + line + "\"");
+            }
+            try {
+                stations.add(new Station(Double.parseDouble(fields[0]), Double.parseDouble(fields[1])));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(source + ", line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return stations.toArray(new Station[0]);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Station[] getStations() {
+        return stations;
+    }
+
+    int size() {
+        return stations.length;
+    }
+}
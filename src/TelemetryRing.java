@@ -0,0 +1,104 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The last states of one drone, written by a single thread and read by any number of others without locks.
+ *
+ * Frames are numbered from 0 and frame s lives in slot s mod capacity of flat primitive arrays, so that a
+ * state is parsed straight into its slot and nothing is allocated per frame. The writer first claims the
+ * frame, then writes the slot, then publishes it. A reader copies a published slot and checks afterwards that
+ * the writer has not claimed the slot again in the meantime (a sequence lock); if it has, the frame is gone
+ * and the read fails instead of returning a mix of two frames. Readers never hold up the writer.
+ */
+final class TelemetryRing {
+
+    private final int capacity;
+    private final int mask;
+    private final double[] values;
+    private final long[] receivedNanos;
+
+    // Frames whose writing has started, and frames that are complete
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+
+    TelemetryRing(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.values = new double[capacity * TelloState.FIELDS];
+        this.receivedNanos = new long[capacity];
+    }
+
+    /* ------------------------------------ WRITER ------------------------------------ */
+
+    // Claims the next frame and returns the offset of its slot in the array to write it into
+    int claim() {
+        long sequence = published.get();
+        claimed.set(sequence + 1);
+        // No write to the slot may become visible before the claim
+        VarHandle.storeStoreFence();
+        return (int) (sequence & mask) * TelloState.FIELDS;
+    }
+
+    double[] slots() {
+        return values;
+    }
+
+    void publish(long nanos) {
+        long sequence = published.get();
+        receivedNanos[(int) (sequence & mask)] = nanos;
+        published.lazySet(sequence + 1);
+    }
+
+    /* ------------------------------------ READERS ----------------------------------- */
+
+    /**
+     * Copies frame number sequence into the state. False if it is not published yet or already overwritten,
+     * which happens to frames more than capacity behind the newest one.
+     */
+    boolean read(long sequence, TelloState into) {
+        if (sequence < 0 || sequence >= published.get()) {
+            return false;
+        }
+        int slot = (int) (sequence & mask);
+        System.arraycopy(values, slot * TelloState.FIELDS, into.values, 0, TelloState.FIELDS);
+        long nanos = receivedNanos[slot];
+        // The copy must be complete before the claim is checked
+        VarHandle.loadLoadFence();
+        if (claimed.get() > sequence + capacity) {
+            return false;
+        }
+        into.sequence = sequence;
+        into.receivedNanos = nanos;
+        return true;
+    }
+
+    // Copies the newest frame into the state, false if there is none yet
+    boolean latest(TelloState into) {
+        while (true) {
+            long newest = published.get() - 1;
+            if (newest < 0) {
+                return false;
+            }
+            if (read(newest, into)) {
+                return true;
+            }
+        }
+    }
+
+    // Number of frames published so far; the newest one is getPublished() - 1
+    long getPublished() {
+        return published.get();
+    }
+
+    // Oldest frame that may still be read
+    long getOldest() {
+        return Math.max(0, published.get() - capacity);
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking command channel to a single Tello drone.
+ *
+ * A fleet of one: the channel owns a {@link TelloFleet} with its own socket and event loop, and hands every
+ * command to the fleet's only drone. Commands are sent one at a time, in order, and retried the way the
+ * fleet describes. To fly several drones from one socket, use a {@link TelloFleet} directly.
+ */
+public class TelloCommandChannel implements Closeable {
+
+    static final InetSocketAddress TELLO = new InetSocketAddress("192.168.10.1", 8889);
+    static final int COMMAND_PORT = 8889;
+
+    private final TelloFleet fleet;
+    private final TelloFleet.Drone drone;
+
+    public TelloCommandChannel() throws IOException {
+        this(TELLO, COMMAND_PORT);
+    }
+
+    public TelloCommandChannel(InetSocketAddress drone, int localPort) throws IOException {
+        this(drone, localPort, TelloFleet.DEFAULT_TIMEOUT_MILLIS, TelloFleet.DEFAULT_MAX_ATTEMPTS,
+                TelloFleet.DEFAULT_BACKOFF_MILLIS, TelloFleet.DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    public TelloCommandChannel(InetSocketAddress drone, int localPort, long timeoutMillis, int maxAttempts,
+                               long backoffMillis, long maxBackoffMillis) throws IOException {
+        this.fleet = new TelloFleet(localPort, timeoutMillis, maxAttempts, backoffMillis, maxBackoffMillis);
+        this.drone = fleet.drone(drone);
+    }
+
+    /* ---------------------------------- PUBLIC API ---------------------------------- */
+
+    // Puts the drone in SDK mode
+    public boolean connect() {
+        return send("command").isOk();
+    }
+
+    public CompletableFuture<CommandResult> submit(String command) {
+        return drone.submit(command);
+    }
+
+    // Blocks until the command is acknowledged or all its attempts are spent
+    public CommandResult send(String command) {
+        return drone.send(command);
+    }
+
+    // Journals the commands and replies of the drone from now on, null to stop
+    void record(FlightJournal journal) {
+        fleet.record(journal);
+    }
+
+    CommandStats getStats() {
+        return drone.getStats();
+    }
+
+    InetSocketAddress getDrone() {
+        return drone.getAddress();
+    }
+
+    // Local address the channel listens on, useful when it was bound to port 0
+    InetSocketAddress getLocalAddress() throws IOException {
+        return fleet.getLocalAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        fleet.close();
+    }
+}
@@ -1,7 +1,5 @@
 import java.io.IOException;
 import java.net.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * @author Ebbe Vang
@@ -10,6 +8,7 @@ import java.time.format.DateTimeFormatter;
 public class TelloDrone {
 
     private final int udpPort = 8889;
+    private final int receiveTimeoutMillis = 20_000;
     private DatagramSocket socket;
     private InetAddress IPAddress;
     private boolean isConnected = false;
@@ -24,6 +23,7 @@ public class TelloDrone {
             log("Connecting to drone");
             IPAddress = InetAddress.getByName("192.168.10.1");
             socket = new DatagramSocket(udpPort);
+            socket.setSoTimeout(receiveTimeoutMillis);
             sendMessage("command");
             if (ok()) {
                 isConnected = true;
@@ -77,12 +77,10 @@ public class TelloDrone {
         return new String(packet.getData());
     }
 
+    // Written by the console log's own thread, the command waits for nothing but the queue
     private void log(String message) {
         if (logToConsole) {
-            System.out.print(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")));
-            System.out.print("\t");
-            System.out.println(message);
-
+            AsyncLog.console().log(message);
         }
     }
 }
@@ -0,0 +1,598 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controls any number of Tello drones (e.g. Tello-EDU in station mode, each with its own IP) from a single
+ * UDP socket and a single event loop thread.
+ *
+ * Every drone has its own command queue, which is worked off one command at a time, in order. The loop only
+ * ever waits on the selector, so a drone that is slow to acknowledge holds up nothing but its own queue.
+ * An attempt that gets no reply in time is retried after an exponential backoff, up to a number of attempts.
+ *
+ * The Tello protocol has no sequence numbers and a lost datagram never gets a reply, so replies cannot
+ * simply be paired with datagrams in order. Since a drone only ever has one command in progress, every reply
+ * from it once a command has been sent belongs to one of its attempts and completes it, even one that comes
+ * after its timeout while the retry is still waiting for its backoff; an error only counts as the answer to
+ * the attempt in flight, the retry of a timed out one is already on its way. Once a command ends with attempts
+ * that got no reply, those replies may still be on their way, each up to as late as the movement it started
+ * takes, so the drone's next command waits for a quiet period long enough for all of them. How long a movement
+ * takes is estimated from the command and the speed the drone was set to, times the slowest any drone of the
+ * fleet has been on its movements so far compared with that estimate, so that a simulator running faster than
+ * real time is not waited for as if it were a Tello. Replies in the quiet period are dropped as late instead of
+ * being taken for the reply to the next command, and it ends as soon as every reply that was missing is in.
+ *
+ * An attempt only counts, and its timeout only starts, once its datagram is out. When the socket buffer is
+ * full the loop waits for the channel to become writable and sends it then; a drone the network refuses to
+ * send to at all fails its command with that error. The futures of the commands are completed on a thread of
+ * their own, so that whatever the caller chains to them, like the next command of a mission, never runs on
+ * the loop and holds up the other drones.
+ *
+ * Besides the per-drone {@link CommandStats}, the loop records round trips, command latencies, timeouts and
+ * retries of the whole fleet into the {@link MetricsRegistry}, and every finished command as a
+ * {@link FlightEvents.Command} flight recorder event. Given a {@link FlightJournal}, it also journals every
+ * command, attempt, reply and timeout as it happens, for {@link FlightReplay}.
+ */
+public class TelloFleet implements Closeable {
+
+    // Movement commands are only acknowledged once the movement is over
+    static final long DEFAULT_TIMEOUT_MILLIS = 20_000;
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final long DEFAULT_BACKOFF_MILLIS = 100;
+    static final long DEFAULT_MAX_BACKOFF_MILLIS = 2_000;
+
+    // Quiet period after a command with unanswered attempts, on top of the time their movements take
+    static final long LATE_WINDOW_MILLIS = 500;
+
+    // What a Tello is assumed to fly at until told otherwise, in cm/s, and how fast it turns, in degrees/s
+    static final double DEFAULT_SPEED = 50.0;
+    static final double YAW_RATE = 90.0;
+    static final double TAKEOFF_SECONDS = 5.0;
+    static final double LAND_SECONDS = 3.0;
+
+    // Movements shorter than this are too short to tell the pace of a drone from its latency
+    private static final long PACED_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // From sending an attempt to its reply, and from submitting a command to its end
+    private static final MetricsRegistry.Histogram ROUND_TRIPS = MetricsRegistry.global().histogram("command.rtt");
+    private static final MetricsRegistry.Histogram LATENCIES = MetricsRegistry.global().histogram("command.latency");
+    private static final AtomicLong TIMEOUTS = MetricsRegistry.global().counter("command.timeouts");
+    private static final AtomicLong RETRIES = MetricsRegistry.global().counter("command.retries");
+    private static final AtomicLong FAILURES = MetricsRegistry.global().counter("command.failures");
+    private static final AtomicLong LATE_REPLIES = MetricsRegistry.global().counter("command.late");
+
+    private final long timeoutNanos;
+    // Largest ratio of round trip to estimated duration of a movement so far, NaN before the first one; loop thread only
+    private double pace = Double.NaN;
+    private final int maxAttempts;
+    private final long backoffNanos;
+    private final long maxBackoffNanos;
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private final Thread loop;
+    private final ExecutorService completions;
+    private volatile boolean running = true;
+    // Whether the socket took the last datagram, a drone whose send did not fit waits for OP_WRITE; loop thread only
+    private boolean writable = true;
+
+    private final Map<InetSocketAddress, Drone> drones = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Command> submitted = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(2048);
+    private final CommandStats strays = new CommandStats();
+    private volatile FlightJournal journal;
+
+    public TelloFleet(int localPort) throws IOException {
+        this(localPort, DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_ATTEMPTS, DEFAULT_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    public TelloFleet(int localPort, long timeoutMillis, int maxAttempts, long backoffMillis, long maxBackoffMillis) throws IOException {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is needed, got " + maxAttempts);
+        }
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.maxAttempts = maxAttempts;
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+
+        this.channel = DatagramChannel.open();
+        this.channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        this.channel.bind(new InetSocketAddress(localPort));
+        this.channel.configureBlocking(false);
+        this.selector = Selector.open();
+        this.key = this.channel.register(selector, SelectionKey.OP_READ);
+
+        // One thread, so that commands complete in the order the loop finished them
+        this.completions = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tello-fleet-" + localPort + "-completions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loop = new Thread(this::run, "tello-fleet-" + localPort);
+        this.loop.setDaemon(true);
+        this.loop.start();
+    }
+
+    /* ---------------------------------- PUBLIC API ---------------------------------- */
+
+    // The drone at the given address, added to the fleet the first time it is asked for
+    public Drone drone(InetSocketAddress address) {
+        return drones.computeIfAbsent(address, Drone::new);
+    }
+
+    List<Drone> getDrones() {
+        return new ArrayList<>(drones.values());
+    }
+
+    // Local address the fleet listens on, useful when it was bound to port 0
+    InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    // Journals everything the fleet sends and receives from now on, null to stop
+    void record(FlightJournal journal) {
+        this.journal = journal;
+    }
+
+    // Replies from addresses that are not part of the fleet
+    long getStrayReplies() {
+        return strays.getLateReplies();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join(1_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selector.close();
+        channel.close();
+
+        for (Drone drone : drones.values()) {
+            drone.failAll();
+        }
+        for (Command command; (command = submitted.poll()) != null; ) {
+            fail(command.future, new IOException("Fleet is closed"));
+        }
+        // What is queued still completes, nothing new is taken
+        completions.shutdown();
+    }
+
+    private <T> void complete(CompletableFuture<T> future, T value) {
+        try {
+            future.completeAsync(() -> value, completions);
+        } catch (RejectedExecutionException e) {
+            future.complete(value);
+        }
+    }
+
+    private void fail(CompletableFuture<?> future, Throwable error) {
+        try {
+            completions.execute(() -> future.completeExceptionally(error));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(error);
+        }
+    }
+
+    /* ---------------------------------- EVENT LOOP ---------------------------------- */
+
+    private void run() {
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                for (Command command; (command = submitted.poll()) != null; ) {
+                    command.drone.waiting.add(command);
+                }
+
+                writable = true;
+                long wait = Long.MAX_VALUE;
+                for (Drone drone : drones.values()) {
+                    wait = Math.min(wait, drone.advance(now));
+                }
+                key.interestOps(writable ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+
+                if (wait == Long.MAX_VALUE) {
+                    selector.select();
+                } else if (wait > 0) {
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                } else {
+                    selector.selectNow();
+                }
+                selector.selectedKeys().clear();
+                receiveAll();
+            }
+        } catch (IOException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void receiveAll() throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            SocketAddress from = channel.receive(receiveBuffer);
+            if (from == null) {
+                return;
+            }
+            receiveBuffer.flip();
+            Drone drone = drones.get(from);
+            if (drone == null) {
+                strays.lateReplies.incrementAndGet();
+                continue;
+            }
+            drone.received(System.nanoTime(), decode(receiveBuffer));
+        }
+    }
+
+    // Replies are short ASCII, the drone pads some of them with NULs or line breaks
+    private static String decode(ByteBuffer buffer) {
+        int end = buffer.limit();
+        while (end > 0 && (buffer.get(end - 1) == 0 || buffer.get(end - 1) <= ' ')) {
+            end--;
+        }
+        byte[] bytes = new byte[end];
+        buffer.get(bytes, 0, end);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /* ------------------------------------ DRONES ------------------------------------ */
+
+    /**
+     * One drone of the fleet. Commands can be submitted from any thread, everything else is only
+     * touched by the event loop.
+     */
+    public final class Drone {
+        private final InetSocketAddress address;
+        private final CommandStats stats = new CommandStats();
+
+        private final ArrayDeque<Command> waiting = new ArrayDeque<>();
+        private Command current;
+        private boolean inFlight;
+        private long sentAt;
+        private long nextSendAt;
+        private long quietUntil;
+        // Replies to unanswered attempts still expected in the quiet period, and the speed the drone was set to
+        private int missingReplies;
+        private double speed = DEFAULT_SPEED;
+
+        private Drone(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        public CompletableFuture<CommandResult> submit(String command) {
+            Command queued = new Command(this, command);
+            if (!running) {
+                queued.future.completeExceptionally(new IOException("Fleet is closed"));
+                return queued.future;
+            }
+            stats.commands.incrementAndGet();
+            FlightJournal journal = TelloFleet.this.journal;
+            if (journal != null) {
+                journal.submitted(address, queued.submittedAt, command);
+            }
+            submitted.add(queued);
+            selector.wakeup();
+            return queued.future;
+        }
+
+        // Blocks until the command is acknowledged or all its attempts are spent
+        public CommandResult send(String command) {
+            return submit(command).join();
+        }
+
+        /**
+         * Flies the commands one after the other. If one of them fails for good, the rest is skipped and the
+         * drone is told to land. Completes with the results of every command that was sent.
+         */
+        public CompletableFuture<List<CommandResult>> runMission(List<String> commands) {
+            List<CommandResult> results = new ArrayList<>(commands.size());
+            CompletableFuture<List<CommandResult>> done = new CompletableFuture<>();
+            next(commands, 0, results, done);
+            return done;
+        }
+
+        private void next(List<String> commands, int index, List<CommandResult> results, CompletableFuture<List<CommandResult>> done) {
+            if (index == commands.size()) {
+                done.complete(results);
+                return;
+            }
+            submit(commands.get(index)).whenComplete((result, error) -> {
+                if (error != null) {
+                    done.completeExceptionally(error);
+                    return;
+                }
+                results.add(result);
+                if (result.isOk()) {
+                    next(commands, index + 1, results, done);
+                } else if (!commands.get(index).equals("land")) {
+                    submit("land").whenComplete((landed, ignored) -> {
+                        if (landed != null) {
+                            results.add(landed);
+                        }
+                        done.complete(results);
+                    });
+                } else {
+                    done.complete(results);
+                }
+            });
+        }
+
+        InetSocketAddress getAddress() {
+            return address;
+        }
+
+        CommandStats getStats() {
+            return stats;
+        }
+
+        /* -------------------------- state machine (loop thread) -------------------------- */
+
+        // Sends and times out what is due, returns the nanoseconds until this drone needs the loop again
+        private long advance(long now) {
+            if (current == null && !waiting.isEmpty()) {
+                current = waiting.poll();
+                nextSendAt = now - quietUntil < 0 ? quietUntil : now;
+            }
+            if (current != null && !inFlight && now - nextSendAt >= 0 && writable) {
+                send(now);
+                if (current == null) {
+                    return 0;
+                }
+            }
+            if (inFlight && now - sentAt >= timeoutNanos) {
+                stats.timeouts.incrementAndGet();
+                TIMEOUTS.incrementAndGet();
+                current.timedOut = true;
+                inFlight = false;
+                FlightJournal journal = TelloFleet.this.journal;
+                if (journal != null) {
+                    journal.timedOut(address, now, current.attempts);
+                }
+                retryOrFinish(now, null, -1);
+                return 0;
+            }
+
+            if (inFlight) {
+                return sentAt + timeoutNanos - now;
+            } else if (current != null && (now - nextSendAt < 0 || writable)) {
+                return nextSendAt - now;
+            }
+            // Idle, or due but waiting for room in the socket buffer
+            return Long.MAX_VALUE;
+        }
+
+        private void send(long now) {
+            byte[] data = current.text.getBytes(StandardCharsets.US_ASCII);
+            try {
+                if (channel.send(ByteBuffer.wrap(data), address) == 0) {
+                    // Not sent, so neither an attempt nor timed; it goes out once the channel is writable
+                    writable = false;
+                    return;
+                }
+            } catch (IOException e) {
+                stats.failures.incrementAndGet();
+                FAILURES.incrementAndGet();
+                Command failed = current;
+                current = null;
+                quiet(now, failed, durationNanos(failed.text, speed));
+                fail(failed.future, e);
+                return;
+            }
+            inFlight = true;
+            sentAt = now;
+            current.attempts++;
+            stats.datagrams.incrementAndGet();
+            FlightJournal journal = TelloFleet.this.journal;
+            if (journal != null) {
+                journal.sent(address, now, current.attempts);
+            }
+        }
+
+        private void received(long now, String reply) {
+            FlightJournal journal = TelloFleet.this.journal;
+            // A command that is not sent yet has nothing that could be answered, whatever the quiet period says
+            if (current == null || current.attempts == 0 || (!inFlight && now - quietUntil < 0)) {
+                stats.lateReplies.incrementAndGet();
+                LATE_REPLIES.incrementAndGet();
+                if (journal != null) {
+                    journal.late(address, now, reply);
+                }
+                if (missingReplies > 0 && --missingReplies == 0 && now - quietUntil < 0) {
+                    // Everything that was missing is in, the next command need not wait any longer
+                    quietUntil = now;
+                    if (current != null && current.attempts == 0) {
+                        nextSendAt = now;
+                    }
+                }
+                return;
+            }
+            if (!inFlight) {
+                // The timed out attempt answered after all
+                stats.lateReplies.incrementAndGet();
+                LATE_REPLIES.incrementAndGet();
+                if (reply.startsWith("error")) {
+                    // The timeout has already counted and scheduled the retry, which goes out as planned
+                    current.replies++;
+                    if (journal != null) {
+                        journal.late(address, now, reply);
+                    }
+                    return;
+                }
+            }
+
+            current.replies++;
+            long roundTrip = now - sentAt;
+            stats.recordRoundTrip(roundTrip);
+            ROUND_TRIPS.record(roundTrip);
+            if (journal != null) {
+                journal.replied(address, now, reply, roundTrip);
+            }
+            inFlight = false;
+            if (reply.startsWith("error")) {
+                retryOrFinish(now, reply, roundTrip);
+            } else {
+                finish(now, reply, roundTrip);
+            }
+        }
+
+        private void retryOrFinish(long now, String reply, long roundTrip) {
+            if (current.attempts < maxAttempts) {
+                stats.retries.incrementAndGet();
+                RETRIES.incrementAndGet();
+                long backoff = backoffNanos << Math.min(current.attempts - 1, 20);
+                nextSendAt = now + Math.min(backoff, maxBackoffNanos);
+            } else {
+                stats.failures.incrementAndGet();
+                FAILURES.incrementAndGet();
+                finish(now, reply, roundTrip);
+            }
+        }
+
+        private void finish(long now, String reply, long roundTrip) {
+            Command done = current;
+            current = null;
+            inFlight = false;
+            long estimate = durationNanos(done.text, speed);
+            if (!quiet(now, done, estimate) && roundTrip >= 0 && done.attempts == 1 && estimate >= PACED_NANOS) {
+                double ratio = (double) roundTrip / estimate;
+                pace = Double.isNaN(pace) ? ratio : Math.max(pace, ratio);
+            }
+            long latency = now - done.submittedAt;
+            LATENCIES.record(latency);
+
+            FlightEvents.Command event = new FlightEvents.Command();
+            if (event.shouldCommit()) {
+                event.drone = address.toString();
+                event.command = done.text;
+                event.reply = reply;
+                event.attempts = done.attempts;
+                event.timedOut = done.timedOut;
+                event.roundTrip = roundTrip;
+                event.latency = latency;
+                event.commit();
+            }
+            CommandResult result = new CommandResult(done.text, reply, done.attempts, roundTrip);
+            if (result.isOk() && done.text.startsWith("speed ")) {
+                speed = Math.max(1.0, argument(done.text.split("\\s+"), 1, speed));
+            }
+            FlightJournal journal = TelloFleet.this.journal;
+            if (journal != null) {
+                journal.finished(address, now, latency, roundTrip, done.attempts, done.timedOut, result.isOk());
+            }
+            complete(done.future, result);
+        }
+
+        // Starts the quiet period for the replies the command still has missing, false if none are
+        private boolean quiet(long now, Command done, long estimate) {
+            missingReplies = done.attempts - done.replies;
+            if (missingReplies <= 0) {
+                return false;
+            }
+            double movement = estimate * (Double.isNaN(pace) ? 1.0 : pace);
+            quietUntil = now + missingReplies * (long) movement + Math.min(timeoutNanos, TimeUnit.MILLISECONDS.toNanos(LATE_WINDOW_MILLIS));
+            return true;
+        }
+
+        private void failAll() {
+            IOException closed = new IOException("Fleet is closed");
+            if (current != null) {
+                fail(current.future, closed);
+            }
+            for (Command command : waiting) {
+                fail(command.future, closed);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return address.toString();
+        }
+    }
+
+    /* ---------------------------------- BOOKKEEPING --------------------------------- */
+
+    // How long a drone flying at the speed takes to carry out the command, 0 for one that does not move it
+    static long durationNanos(String command, double speed) {
+        String[] words = command.trim().split("\\s+");
+        double seconds;
+        switch (words[0]) {
+            case "takeoff":
+                seconds = TAKEOFF_SECONDS;
+                break;
+            case "land":
+                seconds = LAND_SECONDS;
+                break;
+            case "forward":
+            case "back":
+            case "left":
+            case "right":
+            case "up":
+            case "down":
+                seconds = argument(words, 1, 0.0) / speed;
+                break;
+            case "cw":
+            case "ccw":
+                seconds = argument(words, 1, 0.0) / YAW_RATE;
+                break;
+            case "go": {
+                double x = argument(words, 1, 0.0);
+                double y = argument(words, 2, 0.0);
+                double z = argument(words, 3, 0.0);
+                seconds = Math.sqrt(x * x + y * y + z * z) / Math.max(1.0, argument(words, 4, speed));
+                break;
+            }
+            default:
+                seconds = 0.0;
+                break;
+        }
+        return (long) (seconds * 1e9);
+    }
+
+    // Argument i of a command as a number, the fallback if it is missing or not a number
+    private static double argument(String[] words, int i, double fallback) {
+        try {
+            return i < words.length ? Math.abs(Double.parseDouble(words[i])) : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static final class Command {
+        final Drone drone;
+        final String text;
+        final CompletableFuture<CommandResult> future = new CompletableFuture<>();
+        final long submittedAt = System.nanoTime();
+        int attempts;
+        int replies;
+        boolean timedOut;
+
+        Command(Drone drone, String text) {
+            this.drone = drone;
+            this.text = text;
+        }
+    }
+}
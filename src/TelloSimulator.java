@@ -0,0 +1,526 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for any number of Tello drones on UDP, speaking the text protocol of the Tello SDK.
+ *
+ * Every simulated drone has its own socket, all of them served by one selector thread. A drone carries out
+ * its commands one after the other and only replies once the movement is over: moves take their distance
+ * over the set speed, turns their angle over the yaw rate, take-off and landing a few seconds. All of that is
+ * multiplied by a time scale, so that missions can run faster than real time. On top of that every reply is
+ * delayed by a latency plus a random jitter, and datagrams are lost in either direction at a given rate.
+ *
+ * Position and heading are tracked in centimetres and degrees, heading 0 being +y and clockwise positive,
+ * the way {@link Main} turns the drone. Once asked to, every drone in SDK mode also streams its state line to
+ * the state port of whoever put it in SDK mode, like a Tello does to port 8890.
+ *
+ * A datagram that cannot be sent is logged and counted, and the drones carry on. Should the loop itself
+ * fail, it logs why and stops; the failure is kept for {@link #getFailure()} and thrown again by
+ * {@link #close()}, so that a test does not take a simulator that quietly stopped answering for lost datagrams.
+ */
+public class TelloSimulator implements Closeable {
+
+    // Default speed of a Tello in cm/s, changed with "speed x"
+    static final double DEFAULT_SPEED = 50.0;
+    static final double YAW_RATE = 90.0;
+    static final double TAKEOFF_SECONDS = 5.0;
+    static final double LAND_SECONDS = 3.0;
+
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final double lossRate;
+    private final double errorRate;
+    private final double timeScale;
+    private final SplittableRandom random;
+
+    private final Selector selector;
+    private final List<SimulatedDrone> drones = new ArrayList<>();
+    private final PriorityQueue<Reply> replies = new PriorityQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(2048);
+    private final Thread loop;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+
+    // Where and how often states are streamed, -1 for not at all
+    private volatile int statePort = -1;
+    private volatile long statePeriodNanos;
+    private long nextState;
+
+    final AtomicLong received = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+    final AtomicLong sent = new AtomicLong();
+    final AtomicLong states = new AtomicLong();
+    final AtomicLong unsent = new AtomicLong();
+
+    /**
+     * @param first     address of the first drone; the others get the following ports, or ports of their own for port 0
+     * @param timeScale factor on the time that movements take, e.g. 0.01 to fly a hundred times faster
+     */
+    public TelloSimulator(InetSocketAddress first, int drones, long latencyMillis, long jitterMillis,
+                          double lossRate, double errorRate, double timeScale, long seed) throws IOException {
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        this.jitterNanos = TimeUnit.MILLISECONDS.toNanos(jitterMillis);
+        this.lossRate = lossRate;
+        this.errorRate = errorRate;
+        this.timeScale = timeScale;
+        this.random = new SplittableRandom(seed);
+        this.selector = Selector.open();
+
+        for (int i = 0; i < drones; i++) {
+            int port = first.getPort() == 0 ? 0 : first.getPort() + i;
+            DatagramChannel channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(first.getAddress(), port));
+            channel.configureBlocking(false);
+            SimulatedDrone drone = new SimulatedDrone(channel);
+            channel.register(selector, SelectionKey.OP_READ, drone);
+            this.drones.add(drone);
+        }
+
+        this.loop = new Thread(this::run, "tello-simulator");
+        this.loop.setDaemon(true);
+        this.loop.start();
+    }
+
+    // Simulator for a number of drones on the loopback interface, with no delays, loss or errors besides the flying
+    static TelloSimulator onLoopback(int drones, double timeScale) throws IOException {
+        return new TelloSimulator(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), drones, 0, 0, 0.0, 0.0, timeScale, 1);
+    }
+
+    /* ---------------------------------- PUBLIC API ---------------------------------- */
+
+    InetSocketAddress getAddress(int drone) throws IOException {
+        return (InetSocketAddress) drones.get(drone).channel.getLocalAddress();
+    }
+
+    List<InetSocketAddress> getAddresses() throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>(drones.size());
+        for (int i = 0; i < drones.size(); i++) {
+            addresses.add(getAddress(i));
+        }
+        return addresses;
+    }
+
+    // x, y, z in cm and the heading in degrees, as of the last command the drone accepted
+    double[] getPosition(int drone) {
+        SimulatedDrone simulated = drones.get(drone);
+        synchronized (simulated) {
+            return new double[]{simulated.x, simulated.y, simulated.z, simulated.yaw};
+        }
+    }
+
+    boolean isFlying(int drone) {
+        SimulatedDrone simulated = drones.get(drone);
+        synchronized (simulated) {
+            return simulated.flying;
+        }
+    }
+
+    // Streams the state of every drone in SDK mode to the port, at the address it got "command" from
+    void streamState(int port, long periodMillis) {
+        statePeriodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        statePort = port;
+        selector.wakeup();
+    }
+
+    // Why the loop stopped before it was closed, null while it runs
+    IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join(1_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selector.close();
+        for (SimulatedDrone drone : drones) {
+            drone.channel.close();
+        }
+        if (failure != null) {
+            throw new IOException("The simulator had stopped", failure);
+        }
+    }
+
+    /* ---------------------------------- EVENT LOOP ---------------------------------- */
+
+    private void run() {
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                while (!replies.isEmpty() && replies.peek().due - now <= 0) {
+                    Reply reply = replies.poll();
+                    if (send(reply.drone, reply.text, reply.to)) {
+                        sent.incrementAndGet();
+                    }
+                }
+
+                if (statePort >= 0 && nextState - now <= 0) {
+                    sendStates();
+                    nextState = now + statePeriodNanos;
+                }
+
+                if (replies.isEmpty() && statePort < 0) {
+                    selector.select();
+                } else {
+                    long due = statePort < 0 ? replies.peek().due
+                            : replies.isEmpty() ? nextState : Math.min(replies.peek().due, nextState);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                    } else {
+                        selector.selectNow();
+                    }
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    receiveAll((SimulatedDrone) key.attachment());
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            if (running) {
+                failure = e;
+                AsyncLog.console().log("Tello simulator stopped: " + e);
+            }
+        }
+    }
+
+    // False if the datagram could not be sent, which is no reason for the other drones to stop
+    private boolean send(SimulatedDrone drone, String text, SocketAddress to) {
+        try {
+            if (drone.channel.send(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)), to) > 0) {
+                return true;
+            }
+        } catch (IOException e) {
+            AsyncLog.console().log("Simulated drone cannot send \"" + text.trim() + "\" to " + to + ": " + e);
+        }
+        unsent.incrementAndGet();
+        return false;
+    }
+
+    private void sendStates() {
+        int port = statePort;
+        for (SimulatedDrone drone : drones) {
+            String state;
+            InetSocketAddress to;
+            synchronized (drone) {
+                if (!drone.sdkMode || drone.controller == null) {
+                    continue;
+                }
+                state = drone.state();
+                to = new InetSocketAddress(drone.controller.getAddress(), port);
+            }
+            if (send(drone, state, to)) {
+                states.incrementAndGet();
+            }
+        }
+    }
+
+    private void receiveAll(SimulatedDrone drone) throws IOException {
+        while (true) {
+            buffer.clear();
+            SocketAddress from = drone.channel.receive(buffer);
+            if (from == null) {
+                return;
+            }
+            received.incrementAndGet();
+            if (random.nextDouble() < lossRate) {
+                dropped.incrementAndGet();
+                continue;
+            }
+            buffer.flip();
+            String command = StandardCharsets.US_ASCII.decode(buffer).toString().trim();
+
+            long now = System.nanoTime();
+            String reply;
+            double seconds;
+            if (drone.sdkMode && random.nextDouble() < errorRate) {
+                reply = "error";
+                seconds = 0.0;
+            } else {
+                synchronized (drone) {
+                    reply = drone.execute(command);
+                    seconds = "ok".equals(reply) ? drone.lastDuration : 0.0;
+                    drone.flownSeconds += seconds;
+                    if (drone.sdkMode && drone.controller == null) {
+                        drone.controller = (InetSocketAddress) from;
+                    }
+                }
+            }
+            if (reply == null) {
+                continue;
+            }
+
+            // Commands are carried out in order, the reply comes when this one is over
+            long start = Math.max(now, drone.busyUntil);
+            drone.busyUntil = start + (long) (seconds * timeScale * 1e9);
+            if (random.nextDouble() < lossRate) {
+                dropped.incrementAndGet();
+                continue;
+            }
+            long delay = latencyNanos + (jitterNanos > 0 ? random.nextLong(jitterNanos) : 0);
+            replies.add(new Reply(drone, from, reply, drone.busyUntil + delay));
+        }
+    }
+
+    /* ------------------------------------ DRONES ------------------------------------ */
+
+    private static final class SimulatedDrone {
+        final DatagramChannel channel;
+        boolean sdkMode;
+        boolean flying;
+        boolean padDetection;
+        double speed = DEFAULT_SPEED;
+        double x;
+        double y;
+        double z;
+        double yaw;
+        int battery = 100;
+        double flownSeconds;
+        InetSocketAddress controller;
+
+        // Loop thread only
+        long busyUntil;
+        double lastDuration;
+
+        SimulatedDrone(DatagramChannel channel) {
+            this.channel = channel;
+        }
+
+        // The reply to the command, null for none; the time it takes ends up in lastDuration
+        String execute(String command) {
+            lastDuration = 0.0;
+            String[] words = command.split("\\s+");
+            if (!sdkMode) {
+                if (words[0].equals("command")) {
+                    sdkMode = true;
+                    return "ok";
+                }
+                // Outside of SDK mode the drone does not answer at all
+                return null;
+            }
+
+            try {
+                switch (words[0]) {
+                    case "command":
+                        return "ok";
+                    case "takeoff":
+                        // A retried take-off, whose first reply got lost, finds the drone in the air already
+                        if (flying) {
+                            return "ok";
+                        }
+                        flying = true;
+                        z = 80;
+                        lastDuration = TAKEOFF_SECONDS;
+                        battery--;
+                        return "ok";
+                    case "land":
+                        if (flying) {
+                            flying = false;
+                            z = 0;
+                            lastDuration = LAND_SECONDS;
+                        }
+                        return "ok";
+                    case "emergency":
+                        flying = false;
+                        z = 0;
+                        return "ok";
+                    case "forward":
+                    case "back":
+                    case "left":
+                    case "right":
+                    case "up":
+                    case "down":
+                        return move(words[0], Double.parseDouble(words[1]));
+                    case "cw":
+                    case "ccw":
+                        return turn(words[0].equals("cw") ? 1 : -1, Double.parseDouble(words[1]));
+                    case "go":
+                        return go(Double.parseDouble(words[1]), Double.parseDouble(words[2]), Double.parseDouble(words[3]),
+                                Double.parseDouble(words[4]), words.length > 5 ? words[5] : null);
+                    case "curve":
+                        return curve(Double.parseDouble(words[1]), Double.parseDouble(words[2]), Double.parseDouble(words[3]),
+                                Double.parseDouble(words[4]), Double.parseDouble(words[5]), Double.parseDouble(words[6]),
+                                Double.parseDouble(words[7]));
+                    case "speed":
+                        double newSpeed = Double.parseDouble(words[1]);
+                        if (newSpeed < 10 || newSpeed > 100) {
+                            return "error";
+                        }
+                        speed = newSpeed;
+                        return "ok";
+                    case "mon":
+                        padDetection = true;
+                        return "ok";
+                    case "moff":
+                        padDetection = false;
+                        return "ok";
+                    case "mdirection":
+                        return "ok";
+                    case "battery?":
+                        return String.valueOf(battery());
+                    case "speed?":
+                        return String.valueOf(speed);
+                    case "height?":
+                        return Math.round(z / 10) + "dm";
+                    default:
+                        return "unknown command: " + words[0];
+                }
+            } catch (RuntimeException e) {
+                // Missing or malformed arguments
+                return "error";
+            }
+        }
+
+        // A percent for every take-off and for every ten seconds in the air
+        int battery() {
+            return Math.max(0, battery - (int) (flownSeconds / 10));
+        }
+
+        // State line as a Tello streams it, the pad always right under the drone once detection is on
+        String state() {
+            int heading = (int) Math.round(yaw > 180 ? yaw - 360 : yaw);
+            return String.format(Locale.ROOT, "mid:%d;x:%d;y:%d;z:%d;mpry:0,0,%d;pitch:0;roll:0;yaw:%d;vgx:0;vgy:0;vgz:0;templ:60;temph:63;"
+                            + "tof:%d;h:%d;bat:%d;baro:%.2f;time:%d;agx:0.00;agy:0.00;agz:-1000.00;\r\n",
+                    padDetection ? 1 : -1, Math.round(x), Math.round(y), Math.round(z), heading, heading,
+                    Math.round(z) + 10, Math.round(z), battery(), z / 100.0, (int) flownSeconds);
+        }
+
+        private String move(String direction, double cm) {
+            if (!flying || cm < 20 || cm > 500) {
+                return "error";
+            }
+            double heading = Math.toRadians(yaw);
+            double forwardX = Math.sin(heading);
+            double forwardY = Math.cos(heading);
+            switch (direction) {
+                case "forward":
+                    x += cm * forwardX;
+                    y += cm * forwardY;
+                    break;
+                case "back":
+                    x -= cm * forwardX;
+                    y -= cm * forwardY;
+                    break;
+                case "right":
+                    x += cm * forwardY;
+                    y -= cm * forwardX;
+                    break;
+                case "left":
+                    x -= cm * forwardY;
+                    y += cm * forwardX;
+                    break;
+                case "up":
+                    z += cm;
+                    break;
+                default:
+                    z = Math.max(0, z - cm);
+                    break;
+            }
+            lastDuration = cm / speed;
+            return "ok";
+        }
+
+        private String turn(int sign, double degrees) {
+            if (!flying || degrees < 0 || degrees > 360) {
+                return "error";
+            }
+            yaw = ((yaw + sign * degrees) % 360 + 360) % 360;
+            lastDuration = degrees / YAW_RATE;
+            return "ok";
+        }
+
+        // Body frame: x forward, y left, z up
+        private String go(double bodyX, double bodyY, double bodyZ, double goSpeed, String pad) {
+            if (!flying || goSpeed < 10 || goSpeed > 100 || Math.abs(bodyX) > 500 || Math.abs(bodyY) > 500 || Math.abs(bodyZ) > 500) {
+                return "error";
+            }
+            if (pad != null && !padDetection) {
+                return "error No valid marker";
+            }
+            double heading = Math.toRadians(yaw);
+            double fromZ = z;
+            x += bodyX * Math.sin(heading) - bodyY * Math.cos(heading);
+            y += bodyX * Math.cos(heading) + bodyY * Math.sin(heading);
+            // Relative to a pad, which is always right under the drone here, the height is absolute
+            z = pad != null ? bodyZ : Math.max(0, z + bodyZ);
+            double climb = z - fromZ;
+            lastDuration = Math.sqrt(bodyX * bodyX + bodyY * bodyY + climb * climb) / goSpeed;
+            return "ok";
+        }
+
+        // Arc through the first point to the second, both in the body frame; timed along the two chords
+        private String curve(double x1, double y1, double z1, double x2, double y2, double z2, double curveSpeed) {
+            if (!flying || curveSpeed < 10 || curveSpeed > 60) {
+                return "error";
+            }
+            for (double coordinate : new double[]{x1, y1, z1, x2, y2, z2}) {
+                if (Math.abs(coordinate) > 500) {
+                    return "error";
+                }
+            }
+            double heading = Math.toRadians(yaw);
+            x += x2 * Math.sin(heading) - y2 * Math.cos(heading);
+            y += x2 * Math.cos(heading) + y2 * Math.sin(heading);
+            z = Math.max(0, z + z2);
+            double first = Math.sqrt(x1 * x1 + y1 * y1 + z1 * z1);
+            double second = Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1) + (z2 - z1) * (z2 - z1));
+            lastDuration = (first + second) / curveSpeed;
+            return "ok";
+        }
+    }
+
+    private static final class Reply implements Comparable<Reply> {
+        final SimulatedDrone drone;
+        final SocketAddress to;
+        final String text;
+        final long due;
+
+        Reply(SimulatedDrone drone, SocketAddress to, String text, long due) {
+            this.drone = drone;
+            this.to = to;
+            this.text = text;
+            this.due = due;
+        }
+
+        @Override
+        public int compareTo(Reply other) {
+            return Long.compare(due - other.due, 0);
+        }
+    }
+
+    /* ---------------------------------- STANDALONE ---------------------------------- */
+
+    // TelloSimulator [drones] [firstPort] [latencyMillis] [jitterMillis] [lossRate] [timeScale]
+    public static void main(String[] args) throws Exception {
+        int drones = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : TelloCommandChannel.COMMAND_PORT;
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : 5;
+        long jitter = args.length > 3 ? Long.parseLong(args[3]) : 5;
+        double loss = args.length > 4 ? Double.parseDouble(args[4]) : 0.0;
+        double timeScale = args.length > 5 ? Double.parseDouble(args[5]) : 1.0;
+
+        try (TelloSimulator simulator = new TelloSimulator(new InetSocketAddress(port), drones, latency, jitter, loss, 0.0, timeScale, System.nanoTime())) {
+            System.out.println("Simulating " + drones + " drones at " + simulator.getAddresses() + ", press enter to stop");
+            System.in.read();
+        }
+    }
+}
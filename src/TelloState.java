@@ -0,0 +1,98 @@
+/**
+ * One state line of a Tello, as it streams them to port 8890 about ten times a second once in SDK mode:
+ *
+ *   mid:-1;x:0;y:0;z:0;mpry:0,0,0;pitch:0;roll:0;yaw:0;vgx:0;vgy:0;vgz:0;templ:60;temph:63;tof:10;h:0;bat:87;
+ *   baro:12.34;time:0;agx:0.00;agy:0.00;agz:-998.00;
+ *
+ * Every field is kept as a double, indexed by the constants below; a field the line did not have is NaN.
+ * Instances are meant to be reused: {@link TelemetryRing} copies a frame into one instead of creating it.
+ */
+final class TelloState {
+
+    // Mission pad id and the position over it in cm, -1 and 0 without a pad in view
+    static final int MID = 0;
+    static final int X = 1;
+    static final int Y = 2;
+    static final int Z = 3;
+    // Attitude relative to the pad, in degrees
+    static final int MPRY_PITCH = 4;
+    static final int MPRY_ROLL = 5;
+    static final int MPRY_YAW = 6;
+    // Attitude in degrees
+    static final int PITCH = 7;
+    static final int ROLL = 8;
+    static final int YAW = 9;
+    // Speed in dm/s
+    static final int VGX = 10;
+    static final int VGY = 11;
+    static final int VGZ = 12;
+    // Lowest and highest temperature in degrees Celsius
+    static final int TEMPL = 13;
+    static final int TEMPH = 14;
+    // Time of flight distance to the ground and height in cm, battery in percent, barometer in m
+    static final int TOF = 15;
+    static final int H = 16;
+    static final int BAT = 17;
+    static final int BARO = 18;
+    // Motor on time in s
+    static final int TIME = 19;
+    // Acceleration in 0.001 g
+    static final int AGX = 20;
+    static final int AGY = 21;
+    static final int AGZ = 22;
+
+    static final int FIELDS = 23;
+
+    // Keys of the state line by field; mpry carries three values, for MPRY_PITCH and the two after it
+    static final String[] KEYS = {"mid", "x", "y", "z", "mpry", null, null, "pitch", "roll", "yaw", "vgx", "vgy", "vgz",
+            "templ", "temph", "tof", "h", "bat", "baro", "time", "agx", "agy", "agz"};
+
+    final double[] values = new double[FIELDS];
+    long sequence = -1;
+    long receivedNanos;
+
+    double get(int field) {
+        return values[field];
+    }
+
+    // Position in the ring it was read from, -1 before the first read
+    long getSequence() {
+        return sequence;
+    }
+
+    // System.nanoTime() of when the datagram was received
+    long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    int getBattery() {
+        return (int) values[BAT];
+    }
+
+    int getHeight() {
+        return (int) values[H];
+    }
+
+    int getPadId() {
+        return (int) values[MID];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder();
+        for (int field = 0; field < FIELDS; field++) {
+            if (KEYS[field] != null && !Double.isNaN(values[field])) {
+                line.append(KEYS[field]).append(':');
+                if (field == MPRY_PITCH) {
+                    line.append((int) values[field]).append(',').append((int) values[field + 1]).append(',').append((int) values[field + 2]);
+                } else if (values[field] == Math.rint(values[field])) {
+                    line.append((long) values[field]);
+                } else {
+                    line.append(values[field]);
+                }
+                line.append(';');
+            }
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receives the state lines every Tello in SDK mode streams to port 8890, for any number of drones on one
+ * socket and one thread, and keeps the last ones of every drone in a {@link TelemetryRing}.
+ *
+ * Datagrams are received into one reused direct buffer and parsed byte by byte straight into the slot of the
+ * drone's ring: keys are packed into a long and compared as such, numbers are read digit by digit, and no
+ * String or other object is created. The only allocation left is the sender address, which the channel
+ * creates whenever a datagram comes from another drone than the one before: 128 bytes per state at most,
+ * some 130 kB a second for a hundred drones, far below anything the GC notices.
+ *
+ * Drones are told apart by the address they send from, which is the address commands go to. Given a
+ * {@link FlightJournal}, every state is also journaled straight from its slot.
+ */
+public class TelloTelemetry implements Closeable {
+
+    static final int STATE_PORT = 8890;
+
+    // States kept per drone, a bit under two minutes at 10 Hz
+    static final int DEFAULT_HISTORY = 1024;
+
+    // Keys of TelloState.KEYS packed into longs, the way the parser packs what it reads
+    private static final long[] PACKED_KEYS = new long[TelloState.FIELDS];
+
+    static {
+        Arrays.fill(PACKED_KEYS, -1L);
+        for (int field = 0; field < TelloState.FIELDS; field++) {
+            String key = TelloState.KEYS[field];
+            if (key != null) {
+                long packed = 0;
+                for (int i = 0; i < key.length(); i++) {
+                    packed = packed << 8 | key.charAt(i);
+                }
+                PACKED_KEYS[field] = packed;
+            }
+        }
+    }
+
+    private final int history;
+    private final DatagramChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+    private final Map<InetSocketAddress, TelemetryRing> rings = new ConcurrentHashMap<>();
+    private final Thread loop;
+    private volatile boolean running = true;
+    private volatile FlightJournal journal;
+
+    final AtomicLong received = new AtomicLong();
+    final AtomicLong malformed = new AtomicLong();
+
+    public TelloTelemetry() throws IOException {
+        this(STATE_PORT, DEFAULT_HISTORY);
+    }
+
+    // Port 0 picks a free one, see getLocalAddress()
+    public TelloTelemetry(int port, int history) throws IOException {
+        this.history = history;
+        this.channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+
+        this.loop = new Thread(this::run, "tello-telemetry");
+        this.loop.setDaemon(true);
+        this.loop.start();
+    }
+
+    // The ring of a drone, created empty if it has not sent anything yet, so it can be watched from the start
+    public TelemetryRing ring(InetSocketAddress drone) {
+        return rings.computeIfAbsent(drone, address -> new TelemetryRing(history));
+    }
+
+    // Journals every state from now on, null to stop
+    void record(FlightJournal journal) {
+        this.journal = journal;
+    }
+
+    Set<InetSocketAddress> getDrones() {
+        return rings.keySet();
+    }
+
+    InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    // Thread that parses the states, e.g. to measure what it allocates
+    Thread getThread() {
+        return loop;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        channel.close();
+        try {
+            loop.join(1_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* ---------------------------------- RECEIVING ----------------------------------- */
+
+    private void run() {
+        try {
+            while (running) {
+                buffer.clear();
+                SocketAddress from = channel.receive(buffer);
+                buffer.flip();
+                received.incrementAndGet();
+
+                TelemetryRing ring = rings.get(from);
+                if (ring == null) {
+                    ring = ring((InetSocketAddress) from);
+                }
+                int offset = ring.claim();
+                if (parse(buffer, ring.slots(), offset)) {
+                    long now = System.nanoTime();
+                    ring.publish(now);
+                    FlightJournal journal = this.journal;
+                    if (journal != null) {
+                        journal.state((InetSocketAddress) from, now, ring.slots(), offset);
+                    }
+                } else {
+                    malformed.incrementAndGet();
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Closed
+        } catch (IOException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Parses a state line between the position and the limit of the buffer into values[offset] to
+     * values[offset + FIELDS - 1], NaN for the fields it does not have. Unknown keys are skipped; false if the
+     * line is not a state line at all.
+     */
+    static boolean parse(ByteBuffer line, double[] values, int offset) {
+        Arrays.fill(values, offset, offset + TelloState.FIELDS, Double.NaN);
+        int position = line.position();
+        int limit = line.limit();
+        int fields = 0;
+
+        while (position < limit) {
+            // Key up to ':', ignoring the line break at the end
+            long packed = 0;
+            int length = 0;
+            byte b;
+            while (position < limit && (b = line.get(position)) != ':') {
+                if (b != '\r' && b != '\n' && b != ' ' && b != 0) {
+                    packed = packed << 8 | (b & 0xff);
+                    length++;
+                }
+                position++;
+            }
+            if (position == limit) {
+                return length == 0 && fields > 0;
+            }
+            position++;
+            int field = length <= 8 ? field(packed) : -1;
+
+            // One value, or three separated by commas, up to ';'
+            int value = 0;
+            while (true) {
+                int start = position;
+                boolean negative = false;
+                if (position < limit && line.get(position) == '-') {
+                    negative = true;
+                    position++;
+                }
+                long digits = 0;
+                long scale = 1;
+                boolean fraction = false;
+                boolean any = false;
+                while (position < limit && (b = line.get(position)) != ';' && b != ',') {
+                    if (b >= '0' && b <= '9') {
+                        if (digits < Long.MAX_VALUE / 100) {
+                            digits = digits * 10 + (b - '0');
+                            if (fraction) {
+                                scale *= 10;
+                            }
+                        }
+                        any = true;
+                    } else if (b == '.' && !fraction) {
+                        fraction = true;
+                    } else if (b != '\r' && b != '\n') {
+                        return false;
+                    }
+                    position++;
+                }
+                if (!any && position > start) {
+                    return false;
+                }
+                if (any && field >= 0 && value < 3 && (value == 0 || field == TelloState.MPRY_PITCH)) {
+                    double number = (double) digits / scale;
+                    values[offset + field + value] = negative ? -number : number;
+                }
+                value++;
+                if (position == limit || line.get(position) == ';') {
+                    break;
+                }
+                position++;
+            }
+            if (position < limit) {
+                position++;
+            }
+            fields++;
+        }
+        return fields > 0;
+    }
+
+    private static int field(long packed) {
+        for (int field = 0; field < PACKED_KEYS.length; field++) {
+            if (PACKED_KEYS[field] == packed) {
+                return field;
+            }
+        }
+        return -1;
+    }
+}
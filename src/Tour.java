@@ -0,0 +1,43 @@
+import java.util.Arrays;
+
+/**
+ * A closed tour referring to the rows of a distance matrix, e.g. [0, 3, 1, 2, 0].
+ */
+public final class Tour {
+    private final int[] path;
+    private final double cost;
+
+    Tour(int[] path, double cost) {
+        this.path = path;
+        this.cost = cost;
+    }
+
+    static Tour of(int[] path, double[][] distances) {
+        return new Tour(path, costOf(path, distances));
+    }
+
+    static double costOf(int[] path, double[][] distances) {
+        double cost = 0.0;
+        for (int i = 0; i + 1 < path.length; i++) {
+            cost += distances[path[i]][path[i + 1]];
+        }
+        return cost;
+    }
+
+    int[] getPath() {
+        return path;
+    }
+
+    double getCost() {
+        return cost;
+    }
+
+    int size() {
+        return path.length - 1;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(path) + " (" + cost + ")";
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * A strategy for finding a closed tour over a distance matrix.
+ * Row and column 0 of the matrix is the control station (depot), every tour starts and ends there.
+ */
+public interface TourSolver {
+
+    Tour solve(double[][] distances);
+}